@@ -0,0 +1,260 @@
+package uf.sort.kernel;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Kernels built on the JDK Vector API. Blocks of {@code lanes * lanes} values are sorted with a
+ * sorting network applied across vectors, then runs are merged with a bitonic merge of vector-width blocks.
+ * Requires {@code --add-modules jdk.incubator.vector} at compile and run time.
+ */
+public class VectorKernels extends Kernels {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private final int lanes = SPECIES.length();
+    private final ScalarKernels scalar = new ScalarKernels();
+
+    private final int[][] network;
+    private final VectorShuffle<Integer> reverse;
+    private final VectorShuffle<Integer>[] exchange;
+    private final VectorMask<Integer>[] upper;
+    private final IntVector padding = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+
+    /**
+     * Rows of the block being sorted, kept per thread so that sorting doesn't allocate.
+     */
+    private final ThreadLocal<IntVector[]> rows = new ThreadLocal<IntVector[]>() {
+        @Override
+        protected IntVector[] initialValue() {
+            return new IntVector[lanes];
+        }
+    };
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public VectorKernels() {
+        network = network(lanes);
+
+        int[] reverseIndexes = new int[lanes];
+        for (int i = 0; i < lanes; i++) {
+            reverseIndexes[i] = lanes - 1 - i;
+        }
+        reverse = VectorShuffle.fromArray(SPECIES, reverseIndexes, 0);
+
+        int stages = Integer.numberOfTrailingZeros(lanes);
+        exchange = new VectorShuffle[stages];
+        upper = new VectorMask[stages];
+        for (int stage = 0; stage < stages; stage++) {
+            int distance = lanes >> (stage + 1);
+            int[] indexes = new int[lanes];
+            boolean[] bits = new boolean[lanes];
+            for (int i = 0; i < lanes; i++) {
+                indexes[i] = i ^ distance;
+                bits[i] = (i & distance) != 0;
+            }
+            exchange[stage] = VectorShuffle.fromArray(SPECIES, indexes, 0);
+            upper[stage] = VectorMask.fromArray(SPECIES, bits, 0);
+        }
+    }
+
+    /**
+     * Batcher's odd-even merge sort comparators for {@code size} inputs.
+     */
+    private static int[][] network(int size) {
+        List<int[]> comparators = new ArrayList<int[]>();
+        for (int p = 1; p < size; p <<= 1) {
+            for (int k = p; k >= 1; k >>= 1) {
+                for (int j = k % p; j + k < size; j += 2 * k) {
+                    for (int i = 0; i < Math.min(k, size - j - k); i++) {
+                        if ((i + j) / (2 * p) == (i + j + k) / (2 * p)) {
+                            comparators.add(new int[]{i + j, i + j + k});
+                        }
+                    }
+                }
+            }
+        }
+        return comparators.toArray(new int[comparators.size()][]);
+    }
+
+    @Override
+    protected boolean isSupported() {
+        return lanes >= 4 && Integer.bitCount(lanes) == 1;
+    }
+
+    @Override
+    public void sort(int[] data, int[] scratch, int from, int to) {
+        int block = lanes * lanes;
+        int size = to - from;
+        if (scratch == null || size < block * 2) {
+            Arrays.sort(data, from, to);
+            return;
+        }
+
+        IntVector[] rows = this.rows.get();
+        int tail = from + size / block * block;
+        for (int base = from; base < tail; base += block) {
+            for (int row = 0; row < lanes; row++) {
+                rows[row] = IntVector.fromArray(SPECIES, data, base + row * lanes);
+            }
+            for (int[] comparator : network) {
+                IntVector a = rows[comparator[0]];
+                IntVector b = rows[comparator[1]];
+                rows[comparator[0]] = a.min(b);
+                rows[comparator[1]] = a.max(b);
+            }
+            // the block is already loaded, so sorted columns are stored back over it and transposed into scratch
+            for (int row = 0; row < lanes; row++) {
+                rows[row].intoArray(data, base + row * lanes);
+            }
+            for (int row = 0; row < lanes; row++) {
+                for (int column = 0; column < lanes; column++) {
+                    scratch[base + column * lanes + row] = data[base + row * lanes + column];
+                }
+            }
+        }
+        System.arraycopy(data, tail, scratch, tail, to - tail);
+        Arrays.sort(scratch, tail, to);
+
+        int[] source = scratch;
+        int[] target = data;
+        for (int width = lanes; width < size; width *= 2) {
+            for (int low = from; low < to; low += 2 * width) {
+                int mid = Math.min(low + width, to);
+                int high = Math.min(low + 2 * width, to);
+                if (mid < high) {
+                    merge(source, low, mid, high, target);
+                } else {
+                    System.arraycopy(source, low, target, low, high - low);
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != data) {
+            System.arraycopy(source, from, data, from, size);
+        }
+    }
+
+    /**
+     * Merges vector-width blocks taken from the run with the smaller next value. A block shorter than the vector
+     * at the end of a run is padded with {@link Integer#MAX_VALUE}, which sorts after every value, so merging
+     * continues with vectors until both runs are exhausted and the padding falls beyond {@code to}.
+     */
+    @Override
+    public void merge(int[] source, int from, int mid, int to, int[] target) {
+        if (mid - from < lanes || to - mid < lanes) {
+            scalar.merge(source, from, mid, to, target);
+            return;
+        }
+        int i = from;
+        int j = mid;
+        int k = from;
+        IntVector a = IntVector.fromArray(SPECIES, source, i);
+        i += lanes;
+        IntVector b = IntVector.fromArray(SPECIES, source, j);
+        j += lanes;
+        while (true) {
+            b = b.rearrange(reverse);
+            IntVector low = bitonicSort(a.min(b));
+            b = bitonicSort(a.max(b));
+            store(low, target, k, to);
+            k += lanes;
+
+            boolean first = i < mid && (j >= to || source[i] <= source[j]);
+            if (!first && j >= to) break;
+            if (first) {
+                a = load(source, i, mid);
+                i = Math.min(i + lanes, mid);
+            } else {
+                a = load(source, j, to);
+                j = Math.min(j + lanes, to);
+            }
+        }
+        store(b, target, k, to);
+    }
+
+    /**
+     * @return vector of {@code source[from, to)} values, padded with {@link Integer#MAX_VALUE} when shorter
+     */
+    private IntVector load(int[] source, int from, int to) {
+        if (from + lanes <= to) return IntVector.fromArray(SPECIES, source, from);
+        VectorMask<Integer> inRange = SPECIES.indexInRange(from, to);
+        return padding.blend(IntVector.fromArray(SPECIES, source, from, inRange), inRange);
+    }
+
+    /**
+     * Stores lanes of {@code v} which fall before {@code to}.
+     */
+    private void store(IntVector v, int[] target, int from, int to) {
+        if (from + lanes <= to) {
+            v.intoArray(target, from);
+        } else if (from < to) {
+            v.intoArray(target, from, SPECIES.indexInRange(from, to));
+        }
+    }
+
+    /**
+     * Sorts a bitonic vector with a half-cleaner network of exchanges between lanes.
+     */
+    private IntVector bitonicSort(IntVector v) {
+        for (int stage = 0; stage < exchange.length; stage++) {
+            IntVector partner = v.rearrange(exchange[stage]);
+            v = v.min(partner).blend(v.max(partner), upper[stage]);
+        }
+        return v;
+    }
+
+    @Override
+    public boolean isSorted(int[] data, int from, int to) {
+        int i = from;
+        for (; i + lanes < to; i += lanes) {
+            IntVector v = IntVector.fromArray(SPECIES, data, i);
+            IntVector next = IntVector.fromArray(SPECIES, data, i + 1);
+            if (v.compare(VectorOperators.GT, next).anyTrue()) return false;
+        }
+        return scalar.isSorted(data, i, to);
+    }
+
+    @Override
+    public void minMax(int[] data, int from, int to, int[] minMax) {
+        int i = from;
+        if (to - from >= lanes) {
+            IntVector min = IntVector.fromArray(SPECIES, data, i);
+            IntVector max = min;
+            for (i += lanes; i + lanes <= to; i += lanes) {
+                IntVector v = IntVector.fromArray(SPECIES, data, i);
+                min = min.min(v);
+                max = max.max(v);
+            }
+            minMax[0] = Math.min(minMax[0], min.reduceLanes(VectorOperators.MIN));
+            minMax[1] = Math.max(minMax[1], max.reduceLanes(VectorOperators.MAX));
+        }
+        scalar.minMax(data, i, to, minMax);
+    }
+
+    @Override
+    public void histogram(int[] data, int from, int to, int shift, long[] counts) {
+        int[] buckets = new int[lanes];
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+            IntVector.fromArray(SPECIES, data, i).lanewise(VectorOperators.LSHR, shift).intoArray(buckets, 0);
+            for (int bucket : buckets) {
+                counts[bucket]++;
+            }
+        }
+        scalar.histogram(data, i, to, shift, counts);
+    }
+
+    @Override
+    public String toString() {
+        return "vector (" + lanes + " lanes)";
+    }
+}
@@ -0,0 +1,178 @@
+package uf.sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Merges new data into an existing sorted file. Only new data is sorted; ranges of the existing file
+ * below the new minimum and above the new maximum are copied with {@link FileChannel#transferTo}
+ * and only the overlapping range goes through the merge.
+ */
+public class Appender {
+
+    private static final int BUFFER_SIZE = 16 * 1024 * 1024;
+
+    private final int threadsNumber;
+
+    public Appender(int threadsNumber) {
+        this.threadsNumber = threadsNumber;
+    }
+
+    public void append(File in, File sorted) throws IOException, InterruptedException, ExecutionException {
+
+        if (in.length() % 4 != 0) throw new IllegalArgumentException("invalid input file");
+        if (sorted.length() % 4 != 0) throw new IllegalArgumentException("invalid sorted file");
+        System.err.println("New data size: " + in.length() + " bytes");
+        System.err.println("Sorted data size: " + sorted.length() + " bytes");
+
+        File directory = sorted.getAbsoluteFile().getParentFile();
+        File delta = File.createTempFile("delta", null, directory);
+        delta.deleteOnExit();
+        delta.delete();
+        File merged = File.createTempFile("merged", null, directory);
+        merged.deleteOnExit();
+
+        try {
+            Solver solver = new Solver(threadsNumber);
+            try {
+                solver.solve(in, delta);
+            } finally {
+                solver.close();
+            }
+
+            System.err.println("Merging...");
+            long mergeStart = System.currentTimeMillis();
+
+            RandomAccessFile existingFile = new RandomAccessFile(sorted, "r");
+            RandomAccessFile deltaFile = new RandomAccessFile(delta, "r");
+            RandomAccessFile mergedFile = new RandomAccessFile(merged, "rw");
+            try {
+                FileChannel existing = existingFile.getChannel();
+                FileChannel output = mergedFile.getChannel();
+                long existingSize = existing.size();
+                long deltaSize = deltaFile.length();
+
+                long from = existingSize;
+                long to = existingSize;
+                if (deltaSize > 0) {
+                    from = upperBound(existing, read(deltaFile.getChannel(), 0));
+                    to = upperBound(existing, read(deltaFile.getChannel(), deltaSize - 4));
+                }
+                System.err.println("Copied prefix: " + from + " bytes, suffix: " + (existingSize - to) + " bytes");
+
+                transfer(existing, 0, from, output, 0);
+                merge(existing, from, to, deltaFile.getChannel(), deltaSize, output, from);
+                transfer(existing, to, existingSize - to, output, to + deltaSize);
+                output.force(false);
+            } finally {
+                existingFile.close();
+                deltaFile.close();
+                mergedFile.close();
+            }
+
+            Files.move(merged.toPath(), sorted.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long mergeEnd = System.currentTimeMillis();
+            System.err.println("Merge complete in " + (mergeEnd - mergeStart) / 1000 + " seconds.");
+        } finally {
+            delta.delete();
+            merged.delete();
+        }
+    }
+
+    private static int read(FileChannel channel, long position) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        while (value.hasRemaining()) {
+            if (channel.read(value, position + value.position()) < 0) throw new IOException("unexpected end of file");
+        }
+        return value.getInt(0);
+    }
+
+    /**
+     * @return byte position of the first value greater than {@code value}
+     */
+    private static long upperBound(FileChannel channel, int value) throws IOException {
+        long low = 0;
+        long high = channel.size() / 4;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (read(channel, mid * 4) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low * 4;
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target, long targetPosition)
+            throws IOException {
+        target.position(targetPosition);
+        while (count > 0) {
+            long transferred = source.transferTo(position, count, target);
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static void merge(FileChannel existing, long from, long to, FileChannel delta, long deltaSize,
+                              FileChannel output, long position) throws IOException {
+        Window a = new Window(existing, from, to);
+        Window b = new Window(delta, 0, deltaSize);
+        long end = position + (to - from) + deltaSize;
+        IntBuffer target = null;
+        while (a.hasNext() || b.hasNext()) {
+            int value = !b.hasNext() || (a.hasNext() && a.peek() <= b.peek()) ? a.next() : b.next();
+            if (target == null || !target.hasRemaining()) {
+                int size = (int)Math.min(BUFFER_SIZE, end - position);
+                target = output.map(FileChannel.MapMode.READ_WRITE, position, size)
+                        .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+                position += size;
+            }
+            target.put(value);
+        }
+    }
+
+    /**
+     * Reads a range of a file through mapped windows.
+     */
+    private static class Window {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        private IntBuffer buffer;
+
+        public Window(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.position = from;
+            this.end = to;
+        }
+
+        public boolean hasNext() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) return true;
+            if (position >= end) return false;
+            int size = (int)Math.min(BUFFER_SIZE, end - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                    .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+            position += size;
+            return true;
+        }
+
+        public int peek() {
+            return buffer.get(buffer.position());
+        }
+
+        public int next() {
+            return buffer.get();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package uf.sort;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Distributed sort: input is range-partitioned with sampled splitters, partitions are sorted by
+ * {@link Worker} processes and written back at their offsets in the output file.
+ * Partitions of a failed or silent worker are reassigned to the remaining ones.
+ */
+public class Coordinator {
+
+    private static final int PARTITIONS_PER_WORKER = 2;
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = Worker.HEARTBEAT_INTERVAL * 10;
+
+    private final int threadsNumber;
+    private final List<InetSocketAddress> workers;
+
+    public Coordinator(int threadsNumber, List<InetSocketAddress> workers) {
+        if (workers.isEmpty()) throw new IllegalArgumentException("no workers");
+        this.threadsNumber = threadsNumber;
+        this.workers = workers;
+    }
+
+    public void solve(File in, File out) throws IOException, InterruptedException, ExecutionException {
+
+        if (in.length() % 4 != 0) throw new IllegalArgumentException("invalid input file");
+        System.err.println("Input data size: " + in.length() + " bytes");
+
+        if (!out.createNewFile()) {
+            throw new IllegalArgumentException("out file shouldn't exists");
+        }
+
+        System.err.println("Workers number: " + workers.size());
+
+        System.err.println("Partitioning...");
+        long sortStart = System.currentTimeMillis();
+
+        SampleSorter.Bucket[] partitions;
+        SampleSorter partitioner = new SampleSorter(threadsNumber);
+        try {
+            partitions = partitioner.partition(in, workers.size() * PARTITIONS_PER_WORKER);
+        } finally {
+            partitioner.close();
+        }
+
+        System.err.println("Sorting...");
+        RandomAccessFile output = new RandomAccessFile(out, "rw");
+        ExecutorService dispatchers = Executors.newFixedThreadPool(workers.size());
+        try {
+            output.setLength(in.length());
+
+            BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+            CountDownLatch done = new CountDownLatch(partitions.length);
+            for (int i = 0; i < partitions.length; i++) {
+                if (partitions[i].size() > 0) {
+                    queue.add(i);
+                } else {
+                    done.countDown();
+                }
+            }
+
+            Set<InetSocketAddress> dead = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+            ConcurrentMap<Integer, Set<InetSocketAddress>> failedOn = new ConcurrentHashMap<Integer, Set<InetSocketAddress>>();
+            AtomicReference<String> failure = new AtomicReference<String>();
+            for (InetSocketAddress worker : workers) {
+                dispatchers.submit(new Dispatcher(worker, workers, partitions, queue, done, dead, failedOn, failure,
+                        output.getChannel()));
+            }
+
+            while (!done.await(Worker.HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) throw new IOException(failure.get());
+                if (dead.size() == workers.size()) throw new IOException("all workers failed");
+            }
+        } finally {
+            dispatchers.shutdownNow();
+            output.close();
+            for (SampleSorter.Bucket partition : partitions) {
+                partition.delete();
+            }
+        }
+
+        long sortEnd = System.currentTimeMillis();
+        System.err.println("Sort complete in " + (sortEnd - sortStart) / 1000 + " seconds.");
+    }
+
+    private static class Dispatcher implements Runnable {
+
+        private final InetSocketAddress worker;
+        private final List<InetSocketAddress> workers;
+        private final SampleSorter.Bucket[] partitions;
+        private final BlockingQueue<Integer> queue;
+        private final CountDownLatch done;
+        private final Set<InetSocketAddress> dead;
+        private final ConcurrentMap<Integer, Set<InetSocketAddress>> failedOn;
+        private final AtomicReference<String> failure;
+        private final FileChannel output;
+
+        public Dispatcher(InetSocketAddress worker, List<InetSocketAddress> workers, SampleSorter.Bucket[] partitions,
+                          BlockingQueue<Integer> queue, CountDownLatch done, Set<InetSocketAddress> dead,
+                          ConcurrentMap<Integer, Set<InetSocketAddress>> failedOn, AtomicReference<String> failure,
+                          FileChannel output) {
+            this.worker = worker;
+            this.workers = workers;
+            this.partitions = partitions;
+            this.queue = queue;
+            this.done = done;
+            this.dead = dead;
+            this.failedOn = failedOn;
+            this.failure = failure;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (done.getCount() > 0) {
+                    Integer partition = queue.poll(Worker.HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (partition == null) continue;
+                    Set<InetSocketAddress> failed = failedOn.get(partition);
+                    if (failed != null && failed.contains(worker)) {
+                        // leave the partition to workers it hasn't failed on yet
+                        if (!failedEverywhere(partition)) {
+                            queue.add(partition);
+                            Thread.sleep(Worker.HEARTBEAT_INTERVAL / 10);
+                        }
+                        continue;
+                    }
+                    try {
+                        sort(partition);
+                        done.countDown();
+                    } catch (PartitionFailedException e) {
+                        // the worker answered, so it stays in use; the partition may succeed on another worker,
+                        // e.g. one with a larger heap
+                        if (failed == null) {
+                            failedOn.putIfAbsent(partition, Collections.newSetFromMap(
+                                    new ConcurrentHashMap<InetSocketAddress, Boolean>()));
+                            failed = failedOn.get(partition);
+                        }
+                        failed.add(worker);
+                        System.err.println("Partition " + partition + " failed on worker " + worker + ": " + e.getMessage());
+                        if (!failedEverywhere(partition)) queue.add(partition);
+                    } catch (IOException e) {
+                        System.err.println("Worker " + worker + " failed: " + e + ", partition " + partition + " reassigned");
+                        dead.add(worker);
+                        queue.add(partition);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Records the failure of the sort when the partition failed on every worker still alive.
+         */
+        private boolean failedEverywhere(int partition) {
+            Set<InetSocketAddress> failed = failedOn.get(partition);
+            for (InetSocketAddress other : workers) {
+                if (!dead.contains(other) && (failed == null || !failed.contains(other))) return false;
+            }
+            failure.compareAndSet(null, "partition " + partition + " failed on all workers");
+            return true;
+        }
+
+        private void sort(int partition) throws IOException {
+            SampleSorter.Bucket bucket = partitions[partition];
+            Socket socket = new Socket();
+            try {
+                socket.connect(worker, CONNECT_TIMEOUT);
+                socket.setSoTimeout(READ_TIMEOUT);
+
+                DataOutputStream request = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream(), Worker.TRANSFER_BUFFER));
+                request.writeInt(partition);
+                request.writeLong(bucket.size());
+                InputStream data = new BufferedInputStream(new FileInputStream(bucket.file()), Worker.TRANSFER_BUFFER);
+                try {
+                    Worker.copy(data, request, bucket.size());
+                } finally {
+                    data.close();
+                }
+                request.flush();
+
+                DataInputStream response = new DataInputStream(
+                        new BufferedInputStream(socket.getInputStream(), Worker.TRANSFER_BUFFER));
+                int status;
+                while ((status = response.readInt()) == Worker.HEARTBEAT) {
+                    // worker is still sorting
+                }
+                if (status == Worker.FAILED) throw new PartitionFailedException(response.readUTF());
+                if (status != Worker.DONE) throw new IOException("unexpected status " + status);
+                if (response.readLong() != bucket.size()) throw new IOException("invalid result size");
+
+                byte[] buffer = new byte[Worker.TRANSFER_BUFFER];
+                long position = bucket.offset();
+                long end = bucket.offset() + bucket.size();
+                while (position < end) {
+                    int read = response.read(buffer, 0, (int)Math.min(buffer.length, end - position));
+                    if (read < 0) throw new EOFException("unexpected end of stream");
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        position += output.write(chunk, position);
+                    }
+                }
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Worker reported a failure of the partition sort, as opposed to the worker itself being unreachable.
+     */
+    private static class PartitionFailedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public PartitionFailedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package uf.sort;
 
+import uf.sort.io.Format;
+
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 
 public class Main {
@@ -9,6 +14,10 @@ public class Main {
 
         if (args.length < 3) {
             System.err.println("Usage: <threads number> <input file> <output file> [mode]");
+            System.err.println("       <threads number> <input file> <output file> solve [binary|text] [binary|text]");
+            System.err.println("       <threads number> <new data file> <sorted file> append");
+            System.err.println("       <threads number> <input file> <output file> distribute <host:port>[,<host:port>...]");
+            System.err.println("       <threads number> <port> <work dir> worker");
             System.exit(1);
         }
 
@@ -44,14 +53,56 @@ public class Main {
         } else if (mode.equalsIgnoreCase("validate")) {
             new Validator().validate(in, out);
         } else if (mode.equalsIgnoreCase("solve")) {
+            Format inputFormat = args.length > 4 ? format(args[4]) : Format.BINARY;
+            Format outputFormat = args.length > 5 ? format(args[5]) : inputFormat;
             Solver solver = new Solver(threadsNumber);
             try {
-                solver.solve(in, out);
+                solver.solve(in, out, inputFormat, outputFormat);
             } finally {
                 solver.close();
             }
+        } else if (mode.equalsIgnoreCase("samplesort")) {
+            SampleSorter sorter = new SampleSorter(threadsNumber);
+            try {
+                sorter.solve(in, out);
+            } finally {
+                sorter.close();
+            }
+        } else if (mode.equalsIgnoreCase("append")) {
+            new Appender(threadsNumber).append(in, out);
+        } else if (mode.equalsIgnoreCase("distribute")) {
+            if (args.length < 5) throw new IllegalArgumentException("workers addresses expected");
+            List<InetSocketAddress> workers = new ArrayList<InetSocketAddress>();
+            for (String address : args[4].split(",")) {
+                int separator = address.lastIndexOf(':');
+                if (separator < 0) throw new IllegalArgumentException("Illegal worker address " + address);
+                workers.add(new InetSocketAddress(address.substring(0, separator).trim(),
+                        Integer.parseInt(address.substring(separator + 1).trim())));
+            }
+            new Coordinator(threadsNumber, workers).solve(in, out);
+        } else if (mode.equalsIgnoreCase("worker")) {
+            int port;
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Port " + args[1] + " must be an integer.");
+            }
+            Worker worker = new Worker(threadsNumber, out);
+            try {
+                worker.serve(port);
+            } finally {
+                worker.close();
+            }
         } else {
             throw new IllegalArgumentException("Illegal mode " + mode);
         }
     }
+
+    private static Format format(String format) {
+        try {
+            return Format.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Illegal format " + format);
+        }
+    }
 }
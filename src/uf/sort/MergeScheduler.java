@@ -0,0 +1,146 @@
+package uf.sort;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Limits the number of sort and merge tasks running at once. The limit starts at the number of available
+ * processors and is hill-climbed between 1 and the pool size: after every window of completed tasks the
+ * measured throughput is compared with the previous window and the limit keeps moving in the same direction
+ * while throughput improves. Tasks which would exceed the heap headroom are held back while others are running.
+ * Submission never blocks; held back tasks are started when running ones complete.
+ */
+public class MergeScheduler {
+
+    private static final double MIN_HEADROOM = 0.1;
+    private static final double SIGNIFICANT_CHANGE = 1.05;
+
+    private final ExecutorService executor;
+    private final int maxLimit;
+    private final Deque<Task> pending = new ArrayDeque<Task>();
+
+    private int limit;
+    private int direction = 1;
+    private int inFlight = 0;
+    private int peak = 0;
+    private int held = 0;
+
+    private long windowStart = System.nanoTime();
+    private long windowWork = 0;
+    private int windowCompleted = 0;
+    private boolean windowSaturated = true;
+    private double lastThroughput = 0;
+
+    public MergeScheduler(ExecutorService executor, int maxLimit) {
+        this.executor = executor;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(1, Math.min(maxLimit, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param work   work estimate used for throughput measurement, bytes read for a merge
+     * @param memory heap bytes the task result needs
+     */
+    public synchronized void submit(Runnable task, long work, long memory) {
+        Task scheduled = new Task(task, work, memory);
+        pending.add(scheduled);
+        start();
+        if (pending.peekLast() == scheduled) held++;
+    }
+
+    public synchronized int limit() {
+        return limit;
+    }
+
+    public synchronized int peak() {
+        return peak;
+    }
+
+    public synchronized int held() {
+        return held;
+    }
+
+    /**
+     * Resets peak and held back counters, so that they describe one sort.
+     */
+    public synchronized void resetStatistics() {
+        peak = inFlight;
+        held = 0;
+    }
+
+    private void start() {
+        while (!pending.isEmpty() && inFlight < limit) {
+            Task task = pending.peek();
+            if (inFlight > 0 && headroom() - task.memory < MIN_HEADROOM * Runtime.getRuntime().maxMemory()) break;
+            pending.poll();
+            inFlight++;
+            peak = Math.max(peak, inFlight);
+            executor.submit(task);
+        }
+    }
+
+    private synchronized void complete(Task task) {
+        inFlight--;
+        if (pending.isEmpty()) windowSaturated = false;
+        windowWork += task.work;
+        windowCompleted++;
+        if (windowCompleted >= Math.max(2, limit)) adjust();
+        start();
+    }
+
+    /**
+     * Windows in which tasks ran out are skipped: their throughput is bounded by the supply of tasks,
+     * like the last levels of a merge tree, and says nothing about the limit. A higher limit is kept only
+     * while it improves throughput significantly, a lower one while it doesn't hurt it significantly.
+     */
+    private void adjust() {
+        long now = System.nanoTime();
+        double throughput = windowWork * 1e9 / Math.max(1, now - windowStart);
+
+        boolean lowHeadroom = headroom() < MIN_HEADROOM * Runtime.getRuntime().maxMemory();
+        if (windowSaturated || lowHeadroom) {
+            if (lastThroughput > 0) {
+                boolean worse = direction > 0
+                        ? throughput < lastThroughput * SIGNIFICANT_CHANGE
+                        : throughput * SIGNIFICANT_CHANGE < lastThroughput;
+                if (worse) direction = -direction;
+            }
+            if (lowHeadroom) direction = -1;
+            limit = Math.max(1, Math.min(maxLimit, limit + direction));
+            lastThroughput = throughput;
+        }
+
+        windowStart = now;
+        windowWork = 0;
+        windowCompleted = 0;
+        windowSaturated = true;
+    }
+
+    private static long headroom() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    private class Task implements Runnable {
+
+        private final Runnable task;
+        private final long work;
+        private final long memory;
+
+        public Task(Runnable task, long work, long memory) {
+            this.task = task;
+            this.work = work;
+            this.memory = memory;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                complete(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package uf.sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Range-partitioned sort: input is sampled to choose splitters, scattered into bucket files
+ * in one parallel pass, then every bucket is sorted in memory and written directly at its
+ * offset in the output file. Buckets that turn out too large for memory are re-split.
+ */
+public class SampleSorter {
+
+    private static final int CHUNK_SIZE = 96 * 1024 * 1024;
+    private static final int SAMPLES_PER_BUCKET = 64;
+
+    private final int threadsNumber;
+    private final ExecutorService executor;
+
+    public SampleSorter(int threadsNumber) {
+        this.threadsNumber = threadsNumber;
+        this.executor = Executors.newFixedThreadPool(threadsNumber);
+    }
+
+    public void solve(File in, File out) throws IOException, InterruptedException, ExecutionException {
+
+        if (in.length() % 4 != 0) throw new IllegalArgumentException("invalid input file");
+        System.err.println("Input data size: " + in.length() + " bytes");
+
+        if ((long)threadsNumber * CHUNK_SIZE > Runtime.getRuntime().maxMemory())
+            throw new IllegalArgumentException("too many threads");
+
+        if (!out.createNewFile()) {
+            throw new IllegalArgumentException("out file shouldn't exists");
+        }
+
+        int bucketsNumber = (int)Math.max(threadsNumber, in.length() * 2 / CHUNK_SIZE + 1);
+        System.err.println("Buckets number: " + bucketsNumber);
+
+        RandomAccessFile output = new RandomAccessFile(out, "rw");
+
+        System.err.println("Sorting...");
+        long sortStart = System.currentTimeMillis();
+        boolean sorted = false;
+        try {
+            output.setLength(in.length());
+            FileChannel outputChannel = output.getChannel();
+
+            Bucket[] buckets = partition(in, bucketsNumber);
+            BufferPool bufferPool = bufferPool(bucketsNumber);
+
+            Deque<Future<Bucket[]>> pending = new ArrayDeque<Future<Bucket[]>>();
+            for (Bucket bucket : buckets) {
+                pending.add(executor.submit(new BucketSort(bucket, outputChannel, CHUNK_SIZE, bufferPool)));
+            }
+
+            int resplit = 0;
+            while (!pending.isEmpty()) {
+                Bucket[] rest = pending.poll().get();
+                if (rest.length > 0) resplit++;
+                for (Bucket bucket : rest) {
+                    pending.add(executor.submit(new BucketSort(bucket, outputChannel, CHUNK_SIZE, bufferPool)));
+                }
+            }
+            System.err.println("Buckets re-split: " + resplit);
+            sorted = true;
+        } finally {
+            output.close();
+            if (!sorted) out.delete();
+        }
+
+        long sortEnd = System.currentTimeMillis();
+        System.err.println("Sort complete in " + (sortEnd - sortStart) / 1000 + " seconds.");
+    }
+
+    /**
+     * Scatters input into {@code bucketsNumber} range-partitioned bucket files in one parallel pass.
+     * Buckets are ordered by value range and carry their offsets in the sorted output.
+     * Caller is responsible for deleting them.
+     */
+    Bucket[] partition(File in, int bucketsNumber) throws IOException, InterruptedException, ExecutionException {
+        RandomAccessFile input = new RandomAccessFile(in, "r");
+        try {
+            FileChannel inputChannel = input.getChannel();
+            int[] splitters = sample(inputChannel, in.length(), bucketsNumber, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            Bucket[] buckets = scatter(inputChannel, in.length(), splitters, CHUNK_SIZE, bufferPool(bucketsNumber), true);
+            long offset = 0;
+            for (Bucket bucket : buckets) {
+                bucket.offset = offset;
+                offset += bucket.size;
+            }
+            return buckets;
+        } finally {
+            input.close();
+        }
+    }
+
+    private BufferPool bufferPool(int bucketsNumber) {
+        long bufferSize = Runtime.getRuntime().maxMemory() / 8 / ((long)threadsNumber * bucketsNumber);
+        bufferSize = Math.max(4 * 1024, Math.min(256 * 1024, bufferSize));
+        return new BufferPool((int)(bufferSize - bufferSize % 4));
+    }
+
+    void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Chooses up to {@code bucketsNumber - 1} distinct splitters greater than {@code min} from a random
+     * sample of the source, so that the minimum always falls into the first bucket and a re-split
+     * never leaves all values in one bucket.
+     */
+    private static int[] sample(FileChannel source, long size, int bucketsNumber, int min, int max) throws IOException {
+        long values = size / 4;
+        int samplesNumber = (int)Math.min(values, (long)bucketsNumber * SAMPLES_PER_BUCKET);
+
+        Random rnd = new Random(System.currentTimeMillis());
+        ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        int[] samples = new int[samplesNumber];
+        for (int i = 0; i < samplesNumber; i++) {
+            long position = (long)(rnd.nextDouble() * values) * 4;
+            value.clear();
+            while (value.hasRemaining()) {
+                if (source.read(value, position + value.position()) < 0) throw new IOException("unexpected end of file");
+            }
+            samples[i] = value.getInt(0);
+        }
+        Arrays.sort(samples);
+
+        int[] splitters = new int[bucketsNumber - 1];
+        int count = 0;
+        for (int i = 1; i < bucketsNumber && samplesNumber > 0; i++) {
+            int splitter = samples[(int)((long)i * samplesNumber / bucketsNumber)];
+            if (splitter > min && (count == 0 || splitter > splitters[count - 1])) {
+                splitters[count++] = splitter;
+            }
+        }
+        if (count == 0 && min < max && splitters.length > 0) {
+            // midpoint rounded down, so the splitter falls into (min, max] for negative bounds too
+            splitters[count++] = min + (int)(((long)max - min) / 2) + 1;
+        }
+        return Arrays.copyOf(splitters, count);
+    }
+
+    private Bucket[] scatter(FileChannel source, long size, int[] splitters, int segmentSize,
+                             BufferPool bufferPool, boolean parallel) throws IOException, InterruptedException, ExecutionException {
+
+        Bucket[] buckets = new Bucket[splitters.length + 1];
+        try {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket();
+            }
+
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (long position = 0; position < size; position += segmentSize) {
+                Scatter scatter = new Scatter(source, position, Math.min(segmentSize, size - position),
+                        splitters, buckets, bufferPool);
+                if (parallel) {
+                    futures.add(executor.submit(scatter));
+                } else {
+                    scatter.call();
+                }
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (IOException e) {
+            delete(buckets);
+            throw e;
+        } catch (InterruptedException e) {
+            delete(buckets);
+            throw e;
+        } catch (ExecutionException e) {
+            delete(buckets);
+            throw e;
+        }
+        for (Bucket bucket : buckets) {
+            bucket.channel.close();
+        }
+        return buckets;
+    }
+
+    private static void delete(Bucket[] buckets) {
+        for (Bucket bucket : buckets) {
+            if (bucket != null) bucket.delete();
+        }
+    }
+
+    private static int bucketOf(int[] splitters, int value) {
+        int low = 0;
+        int high = splitters.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (splitters[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static class Bucket {
+
+        private final File file;
+        private final FileChannel channel;
+
+        private long size = 0;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+
+        private long offset;
+
+        public Bucket() throws IOException {
+            file = File.createTempFile("bucket", null, new File(System.getProperty("user.dir")));
+            file.deleteOnExit();
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        public synchronized void append(ByteBuffer buffer, int min, int max) throws IOException {
+            buffer.flip();
+            size += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            if (min < this.min) this.min = min;
+            if (max > this.max) this.max = max;
+        }
+
+        public File file() {
+            return file;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        public void delete() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            file.delete();
+        }
+    }
+
+    private static class BufferPool {
+
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final int bufferSize;
+
+        public BufferPool(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public ByteBuffer acquire() {
+            ByteBuffer buffer = buffers.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.BIG_ENDIAN);
+            }
+            return buffer;
+        }
+
+        public void release(ByteBuffer buffer) {
+            buffer.clear();
+            buffers.offer(buffer);
+        }
+    }
+
+    private static class Scatter implements Callable<Void> {
+
+        private final FileChannel source;
+        private final long position;
+        private final long size;
+        private final int[] splitters;
+        private final Bucket[] buckets;
+        private final BufferPool bufferPool;
+
+        public Scatter(FileChannel source, long position, long size, int[] splitters, Bucket[] buckets, BufferPool bufferPool) {
+            this.source = source;
+            this.position = position;
+            this.size = size;
+            this.splitters = splitters;
+            this.buckets = buckets;
+            this.bufferPool = bufferPool;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            ByteBuffer[] buffers = new ByteBuffer[buckets.length];
+            int[] min = new int[buckets.length];
+            int[] max = new int[buckets.length];
+            try {
+                IntBuffer data = source.map(FileChannel.MapMode.READ_ONLY, position, size)
+                        .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+                while (data.hasRemaining()) {
+                    int value = data.get();
+                    int bucket = bucketOf(splitters, value);
+                    ByteBuffer buffer = buffers[bucket];
+                    if (buffer == null) {
+                        buffer = bufferPool.acquire();
+                        buffers[bucket] = buffer;
+                        min[bucket] = value;
+                        max[bucket] = value;
+                    } else {
+                        if (value < min[bucket]) min[bucket] = value;
+                        if (value > max[bucket]) max[bucket] = value;
+                    }
+                    buffer.putInt(value);
+                    if (!buffer.hasRemaining()) {
+                        buckets[bucket].append(buffer, min[bucket], max[bucket]);
+                    }
+                }
+                for (int i = 0; i < buffers.length; i++) {
+                    if (buffers[i] != null && buffers[i].position() > 0) {
+                        buckets[i].append(buffers[i], min[i], max[i]);
+                    }
+                }
+            } finally {
+                for (ByteBuffer buffer : buffers) {
+                    if (buffer != null) bufferPool.release(buffer);
+                }
+            }
+            return null;
+        }
+    }
+
+    private class BucketSort implements Callable<Bucket[]> {
+
+        private final Bucket bucket;
+        private final FileChannel output;
+        private final int maxBucketSize;
+        private final BufferPool bufferPool;
+
+        public BucketSort(Bucket bucket, FileChannel output, int maxBucketSize, BufferPool bufferPool) {
+            this.bucket = bucket;
+            this.output = output;
+            this.maxBucketSize = maxBucketSize;
+            this.bufferPool = bufferPool;
+        }
+
+        @Override
+        public Bucket[] call() throws Exception {
+            try {
+                if (bucket.size == 0) {
+                    return new Bucket[0];
+                }
+                if (bucket.min == bucket.max) {
+                    fill(bucket.offset, bucket.size, bucket.min);
+                    return new Bucket[0];
+                }
+                if (bucket.size <= maxBucketSize) {
+                    sort();
+                    return new Bucket[0];
+                }
+                return resplit();
+            } finally {
+                bucket.delete();
+            }
+        }
+
+        private void sort() throws IOException {
+            RandomAccessFile file = new RandomAccessFile(bucket.file, "r");
+            int[] data = new int[(int)(bucket.size / 4)];
+            try {
+                file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bucket.size)
+                        .order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(data);
+            } finally {
+                file.close();
+            }
+            Arrays.sort(data);
+            output.map(FileChannel.MapMode.READ_WRITE, bucket.offset, bucket.size)
+                    .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(data);
+        }
+
+        private void fill(long offset, long size, int value) throws IOException {
+            while (size > 0) {
+                int length = (int)Math.min(maxBucketSize, size);
+                IntBuffer buffer = output.map(FileChannel.MapMode.READ_WRITE, offset, length)
+                        .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+                while (buffer.hasRemaining()) {
+                    buffer.put(value);
+                }
+                offset += length;
+                size -= length;
+            }
+        }
+
+        private Bucket[] resplit() throws IOException, InterruptedException, ExecutionException {
+            int bucketsNumber = (int)(bucket.size * 2 / maxBucketSize + 1);
+            RandomAccessFile file = new RandomAccessFile(bucket.file, "r");
+            Bucket[] buckets;
+            try {
+                int[] splitters = sample(file.getChannel(), bucket.size, bucketsNumber, bucket.min, bucket.max);
+                buckets = scatter(file.getChannel(), bucket.size, splitters, maxBucketSize, bufferPool, false);
+            } finally {
+                file.close();
+            }
+            int nonEmpty = 0;
+            for (Bucket sub : buckets) {
+                if (sub.size > 0) nonEmpty++;
+            }
+            if (nonEmpty < 2) {
+                delete(buckets);
+                throw new IllegalStateException("re-split of bucket [" + bucket.min + ", " + bucket.max
+                        + "] left all values in one bucket");
+            }
+            long offset = bucket.offset;
+            for (Bucket sub : buckets) {
+                sub.offset = offset;
+                offset += sub.size;
+            }
+            return buckets;
+        }
+    }
+}
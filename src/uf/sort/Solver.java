@@ -1,35 +1,120 @@
 package uf.sort;
 
 import uf.sort.io.FileBackedResult;
+import uf.sort.io.Format;
+import uf.sort.io.HybridResultHolder;
+import uf.sort.io.IntBufferBackedResult;
 import uf.sort.io.IntermediateResultHolder;
+import uf.sort.io.TextFileChunks;
+import uf.sort.io.TextFileResultHolder;
+import uf.sort.kernel.Kernels;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
+import static uf.sort.io.IntermediateResultHolder.Bounds;
 import static uf.sort.io.IntermediateResultHolder.IntermediateResult;
 import static uf.sort.io.IntermediateResultHolder.Tuple;
 
-public class Solver {
+public class Solver implements AutoCloseable {
 
     private final int threadsNumber;
     private final ExecutorService executor;
+    private final boolean pingPongMerge;
+    private final Kernels kernels = Kernels.instance();
+    private final MergeScheduler mergeScheduler;
+    private final AtomicLong mergedBytes = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
 
     public Solver(int threadsNumber) {
+        this(threadsNumber, true);
+    }
+
+    /**
+     * @param pingPongMerge sort every chunk inside two preallocated buffers instead of
+     *                      allocating a new array for each in-memory merge result
+     */
+    public Solver(int threadsNumber, boolean pingPongMerge) {
         this.threadsNumber = threadsNumber;
         this.executor = Executors.newFixedThreadPool(threadsNumber);
+        this.pingPongMerge = pingPongMerge;
+        this.mergeScheduler = new MergeScheduler(executor, threadsNumber);
     }
 
     public void solve(File in, File out) throws IOException, InterruptedException, ExecutionException {
+        solve(in, out, Format.BINARY, Format.BINARY);
+    }
 
-        if (in.length() % 4 != 0) throw new IllegalArgumentException("invalid input file");
+    public void solve(File in, File out, Format inputFormat, Format outputFormat)
+            throws IOException, InterruptedException, ExecutionException {
+
+        if (inputFormat == Format.BINARY && in.length() % 4 != 0) throw new IllegalArgumentException("invalid input file");
         System.err.println("Input data size: " + in.length() + " bytes");
 
         if (!out.createNewFile()) {
             throw new IllegalArgumentException("out file shouldn't exists");
         }
 
+        IntermediateResult output = sort(in, inputFormat, out, outputFormat);
+        if (output != null) output.close();
+    }
+
+    /**
+     * Sorts input like {@link #solve} but leaves the final merge lazy: runs are merged on demand while
+     * the returned stream is consumed, so early termination stops merge work. The stream should be
+     * closed to release intermediate results, and the solver should be closed once it is no longer
+     * needed, as its pool threads would keep the JVM running.
+     */
+    public IntStream stream(File in) throws IOException, InterruptedException, ExecutionException {
+
+        if (in.length() % 4 != 0) throw new IllegalArgumentException("invalid input file");
+        System.err.println("Input data size: " + in.length() + " bytes");
+
+        final IntermediateResult output = sort(in, Format.BINARY, null, Format.BINARY);
+        if (output == null) return IntStream.empty();
+
+        final Iterator<Integer> data = output.iterate();
+        Spliterator.OfInt spliterator = new Spliterators.AbstractIntSpliterator(output.size() / 4,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.SIZED | Spliterator.NONNULL) {
+
+            @Override
+            public boolean tryAdvance(IntConsumer action) {
+                if (!data.hasNext()) return false;
+                action.accept(data.next());
+                return true;
+            }
+
+            @Override
+            public Comparator<? super Integer> getComparator() {
+                return null;
+            }
+        };
+        return StreamSupport.intStream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param out output file, or null to hold chunk results and leave the final merge lazy
+     */
+    private IntermediateResult sort(File in, Format inputFormat, File out, Format outputFormat)
+            throws IOException, InterruptedException, ExecutionException {
+
         int chunkSize = 96 * 1024 * 1024;
 
         if ((long)threadsNumber * chunkSize > Runtime.getRuntime().maxMemory())
@@ -37,39 +122,53 @@ public class Solver {
 
         int mergeBuffer = chunkSize / 3;
 
-        IntermediateResultHolder sortResultHolder;
-        if (threadsNumber * chunkSize > in.length() * 2) {
-            sortResultHolder = new IntermediateResultHolder.InMemory();
+        // half of the heap left after the chunk being sorted in two buffers
+        long memoryBudget = Math.max(0, (Runtime.getRuntime().maxMemory() - 2L * chunkSize) / 2);
+        HybridResultHolder sortResultHolder = new HybridResultHolder(memoryBudget, mergeBuffer);
+
+        FileBackedResult input = null;
+        TextFileChunks textInput = null;
+        int chunksNumber;
+        if (inputFormat == Format.TEXT) {
+            // a line holds at least two bytes, so a text chunk of half size parses into at most chunkSize bytes
+            textInput = new TextFileChunks(in, chunkSize / 2, threadsNumber, executor);
+            chunksNumber = textInput.chunksNumber();
         } else {
-            sortResultHolder = new IntermediateResultHolder.InTmpFile(mergeBuffer);
+            IntermediateResultHolder.InFile inputHolder = new IntermediateResultHolder.InFile(in, chunkSize);
+            input = (FileBackedResult)inputHolder.wrap();
+            chunksNumber = input.chunksNumber(chunkSize);
         }
-
-        IntermediateResultHolder.InFile inputHolder = new IntermediateResultHolder.InFile(in, chunkSize);
-        FileBackedResult input = (FileBackedResult)inputHolder.wrap();
-
-        int chunksNumber = input.chunksNumber(chunkSize);
         System.err.println("Chunks number: " + chunksNumber);
+        System.err.println("Kernels: " + kernels);
 
-        IntermediateResultHolder outputHolder = new IntermediateResultHolder.InFile(out, mergeBuffer);
+        IntermediateResultHolder outputHolder = null;
+        if (out != null && outputFormat == Format.TEXT) {
+            outputHolder = new TextFileResultHolder(out, threadsNumber);
+        } else if (out != null) {
+            outputHolder = new IntermediateResultHolder.InFile(out, mergeBuffer);
+        }
         IntermediateResult output = null;
 
         System.err.println("Sorting...");
         long sortStart = System.currentTimeMillis();
+        mergedBytes.set(0);
+        copiedBytes.set(0);
+        mergeScheduler.resetStatistics();
         try {
 
-            Iterator<IntermediateResult> chunks = input.split(chunkSize);
-            int minSortSplitSize = chunkSize / threadsNumber;
+            Iterator<IntermediateResult> chunks = textInput != null ? textInput.split() : input.split(chunkSize);
 
             if (chunksNumber == 1) {
                 IntermediateResult chunk = chunks.next();
-                FutureResult futureResult = sortChunk(chunk, minSortSplitSize, outputHolder);
+                FutureResult futureResult = sortChunk(chunk, chunkSize,
+                        outputHolder != null ? outputHolder : sortResultHolder);
                 output = futureResult.get();
                 chunk.close();
             } else if (chunksNumber > 0) {
                 MergingFutureResult finalMergingFutureResult = new MergingFutureResult(chunksNumber, sortResultHolder, outputHolder);
                 while (chunks.hasNext()) {
                     IntermediateResult chunk = chunks.next();
-                    FutureResult futureResult = sortChunk(chunk, minSortSplitSize, sortResultHolder);
+                    FutureResult futureResult = sortChunk(chunk, chunkSize, sortResultHolder);
                     IntermediateResult result = futureResult.get();
                     finalMergingFutureResult.addPart(result);
                     chunk.close();
@@ -78,42 +177,84 @@ public class Solver {
                 output = finalMergingFutureResult.get();
             }
         } finally {
-            input.close();
-            if (output != null) output.close();
+            if (input != null) input.close();
+            if (textInput != null) textInput.close();
         }
 
         long sortEnd = System.currentTimeMillis();
         System.err.println("Sort complete in " + (sortEnd - sortStart) / 1000 + " seconds.");
+        System.err.println("Sort and merge concurrency: limit " + mergeScheduler.limit() + ", peak " + mergeScheduler.peak()
+                + ", held back " + mergeScheduler.held() + " tasks");
+        System.err.println("Merged " + mergedBytes.get() + " bytes, copied without merging " + copiedBytes.get() + " bytes");
+        System.err.println("Spilled " + sortResultHolder.spilledResults() + " results (" + sortResultHolder.spilledBytes()
+                + " bytes), " + sortResultHolder.diskResults() + " results written to disk directly");
+        return output;
     }
 
-    void close () {
+    /**
+     * Shuts the pool down and waits for its tasks, which may outlive an interrupted sort.
+     */
+    @Override
+    public void close() {
         executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
     }
 
-    private FutureResult sortChunk(IntermediateResult chunk, int minSortSplitSize, IntermediateResultHolder resultHolder) throws IOException {
+    /**
+     * Splits the chunk into as many leaves as tasks the scheduler currently runs at once, rather than
+     * into one leaf per thread: every halving adds a merge pass over the chunk, which doesn't pay off
+     * beyond the concurrency that actually speeds the sort up.
+     */
+    private FutureResult sortChunk(IntermediateResult chunk, int chunkSize, IntermediateResultHolder resultHolder) throws IOException {
+        int minSortSplitSize = chunkSize / mergeScheduler.limit();
         int parts = 1;
+        int levels = 0;
         int partSize = (int)chunk.size();
         while (partSize > minSortSplitSize) {
             parts *= 2;
+            levels++;
             partSize /= 2;
         }
-        FutureResult result;
+        if (pingPongMerge) {
+            PingPongFutureResult result = new PingPongFutureResult(chunk, levels, resultHolder);
+            result.start();
+            return result;
+        }
+        PartsFutureResult result;
         if (parts == 1) {
             result = new SingleFutureResult(resultHolder);
         } else {
             result = new MergingFutureResult(parts, new IntermediateResultHolder.InMemory(), resultHolder);
         }
-        executor.submit(new Sort(chunk, minSortSplitSize, result));
+        submitSort(new Sort(chunk, minSortSplitSize, result), chunk.size());
         return result;
     }
 
+    /**
+     * Submits a task sorting {@code size} bytes; its work is estimated as comparisons, relative to a merge
+     * of the same size, so the scheduler can compare throughput of sort and merge windows.
+     */
+    private void submitSort(Runnable sort, long size) {
+        long values = Math.max(2, size / 4);
+        mergeScheduler.submit(sort, size * (64 - Long.numberOfLeadingZeros(values - 1)), 0);
+    }
+
     private class Sort implements Runnable {
 
         private final IntermediateResult source;
         private final int minSplitSize;
-        private final FutureResult futureResult;
+        private final PartsFutureResult futureResult;
 
-        public Sort(IntermediateResult source, int minSplitSize, FutureResult futureResult) {
+        public Sort(IntermediateResult source, int minSplitSize, PartsFutureResult futureResult) {
             this.source = source;
             this.minSplitSize = minSplitSize;
             this.futureResult = futureResult;
@@ -130,12 +271,12 @@ public class Solver {
                     futureResult.addPart(result);
                 } else {
                     IntermediateResultHolder.Tuple tuple = source.split();
-                    executor.submit(new Sort(tuple._1, minSplitSize, futureResult));
-                    executor.submit(new Sort(tuple._2, minSplitSize, futureResult));
+                    submitSort(new Sort(tuple._1, minSplitSize, futureResult), tuple._1.size());
+                    submitSort(new Sort(tuple._2, minSplitSize, futureResult), tuple._2.size());
                 }
 
-            } catch (Exception e) {
-                e.printStackTrace();
+            } catch (Throwable e) {
+                futureResult.fail(e);
             } finally {
                 try {
                     source.close();
@@ -146,7 +287,7 @@ public class Solver {
         }
     }
 
-    private static class Merge implements Runnable {
+    private class Merge implements Runnable {
 
         private final int mergeLevel;
 
@@ -168,15 +309,145 @@ public class Solver {
             try {
                 IntermediateResult result;
                 try {
-                    MergingIterator merged = new MergingIterator(source._1.iterate(), source._2.iterate());
-                    result = resultHolder.hold(merged, source._1.size() + source._2.size());
+                    result = merge(source._1, source._2);
                 } finally {
                     source._1.close();
                     source._2.close();
                 }
                 mergingFutureResult.addMergeResult(mergeLevel, result);
-            } catch (Exception e) {
-                e.printStackTrace();
+            } catch (Throwable e) {
+                mergingFutureResult.fail(e);
+            }
+        }
+
+        /**
+         * Copies ranges of the runs which do not overlap in bulk and merges only the overlap window.
+         */
+        private IntermediateResult merge(IntermediateResult a, IntermediateResult b) throws IOException {
+            long size = a.size() + b.size();
+            if (a.size() == 0 || b.size() == 0) {
+                copiedBytes.addAndGet(size);
+                return resultHolder.concat(Arrays.asList(a, b), a.bounds().union(b.bounds()));
+            }
+            if (b.bounds().min < a.bounds().min) {
+                IntermediateResult swap = a;
+                a = b;
+                b = swap;
+            }
+            Bounds bounds = a.bounds().union(b.bounds());
+
+            List<IntermediateResult> parts = new ArrayList<IntermediateResult>();
+            if (a.bounds().max <= b.bounds().min) {
+                parts.add(a.slice(0, a.size() / 4));
+                parts.add(b.slice(0, b.size() / 4));
+            } else {
+                long aCount = a.size() / 4;
+                long bCount = b.size() / 4;
+                long aFrom = upperBound(a, b.bounds().min, 0, aCount);
+                if (aFrom > 0) parts.add(a.slice(0, aFrom));
+                IntermediateResult suffix;
+                if (a.bounds().max > b.bounds().max) {
+                    long aTo = upperBound(a, b.bounds().max, aFrom, aCount);
+                    parts.add(new MergedResult(new Tuple(a.slice(aFrom, aTo), b)));
+                    suffix = a.slice(aTo, aCount);
+                } else {
+                    long bTo = upperBound(b, a.bounds().max, 0, bCount);
+                    parts.add(new MergedResult(new Tuple(a.slice(aFrom, aCount), b.slice(0, bTo))));
+                    suffix = b.slice(bTo, bCount);
+                }
+                if (suffix.size() > 0) parts.add(suffix);
+            }
+            long merged = 0;
+            for (IntermediateResult part : parts) {
+                if (part instanceof MergedResult) merged += part.size();
+            }
+            mergedBytes.addAndGet(merged);
+            copiedBytes.addAndGet(size - merged);
+            return resultHolder.concat(parts, bounds);
+        }
+    }
+
+    /**
+     * Copies values of {@code source} into {@code target} from {@code offset}.
+     */
+    private static void copy(IntermediateResult source, int[] target, int offset) throws IOException {
+        if (source instanceof IntBufferBackedResult) {
+            ((IntBufferBackedResult) source).copyTo(target, offset);
+        } else {
+            Iterator<Integer> iterator = source.iterate();
+            while (iterator.hasNext()) {
+                target[offset++] = iterator.next();
+            }
+        }
+    }
+
+    /**
+     * @return index of the first value greater than {@code value} in sorted {@code result[from, to)}
+     */
+    private static long upperBound(IntermediateResult result, int value, long from, long to) throws IOException {
+        while (from < to) {
+            long mid = (from + to) >>> 1;
+            if (result.get(mid) <= value) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Result of merging two results, computed while it is iterated.
+     */
+    private static class MergedResult implements IntermediateResult {
+
+        private final Tuple source;
+
+        public MergedResult(Tuple source) {
+            this.source = source;
+        }
+
+        @Override
+        public Tuple split() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IntermediateResult slice(long from, long to) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long size() throws IOException {
+            return source._1.size() + source._2.size();
+        }
+
+        @Override
+        public Bounds bounds() throws IOException {
+            return source._1.bounds().union(source._2.bounds());
+        }
+
+        @Override
+        public int get(long index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int[] data() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Integer> iterate() throws IOException {
+            return new MergingIterator(source._1.iterate(), source._2.iterate());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                source._1.close();
+            } finally {
+                source._2.close();
             }
         }
     }
@@ -229,14 +500,25 @@ public class Solver {
         }
     }
 
+    /**
+     * Result computed by pool tasks. A task which fails passes its failure on, so that {@link #get()}
+     * throws instead of waiting for a result which would never come.
+     */
     private interface FutureResult {
+        IntermediateResult get() throws InterruptedException, ExecutionException;
+        void fail(Throwable failure);
+    }
+
+    /**
+     * Result assembled from parts added by {@link Sort} tasks.
+     */
+    private interface PartsFutureResult extends FutureResult {
         void addPart(IntermediateResult part) throws IOException;
-        IntermediateResult get() throws InterruptedException;
     }
 
-    private class SingleFutureResult implements  FutureResult {
+    private class SingleFutureResult implements PartsFutureResult {
 
-        private final BlockingQueue<IntermediateResult> result = new LinkedBlockingQueue<IntermediateResult>();
+        private final CompletableFuture<IntermediateResult> result = new CompletableFuture<IntermediateResult>();
         private final IntermediateResultHolder resultHolder;
 
         public SingleFutureResult(IntermediateResultHolder resultHolder) {
@@ -245,21 +527,149 @@ public class Solver {
 
         @Override
         public void addPart(IntermediateResult part) throws IOException {
-            result.add(resultHolder.hold(part.iterate(), part.size()));
+            result.complete(resultHolder.hold(part.iterate(), part.size()));
         }
 
         @Override
-        public IntermediateResult get() throws InterruptedException {
-            return result.take();
+        public IntermediateResult get() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        @Override
+        public void fail(Throwable failure) {
+            result.completeExceptionally(failure);
         }
     }
 
-    private class MergingFutureResult implements FutureResult {
+    /**
+     * Sorts a chunk inside two buffers of its size: every leaf copies its slice of the chunk and sorts it
+     * in place, then every merge level writes from one buffer into the other, so nothing is allocated after setup.
+     * A chunk backed by a whole heap array, like a parsed text chunk, is sorted in its array instead of a copy.
+     */
+    private class PingPongFutureResult implements FutureResult {
+
+        private final CompletableFuture<IntermediateResult> result = new CompletableFuture<IntermediateResult>();
+        private final IntermediateResult chunk;
+        private final boolean inPlace;
+        private final int[] data;
+        private final int[] buffer;
+        private final int levels;
+        private final IntermediateResultHolder resultHolder;
+
+        public PingPongFutureResult(IntermediateResult chunk, int levels, IntermediateResultHolder resultHolder) throws IOException {
+            int length = (int)(chunk.size() / 4);
+            int[] array = chunk instanceof IntBufferBackedResult ? ((IntBufferBackedResult) chunk).array() : null;
+            this.chunk = chunk;
+            this.inPlace = array != null;
+            this.data = inPlace ? array : new int[length];
+            this.buffer = new int[length];
+            this.levels = levels;
+            this.resultHolder = resultHolder;
+        }
+
+        public void start() {
+            schedule(new Node(null, 0, data.length, 0));
+        }
+
+        private void schedule(Node node) {
+            if (node.level == levels) {
+                submitSort(new SortRange(node), (node.to - node.from) * 4L);
+            } else {
+                int mid = node.from + (node.to - node.from) / 2;
+                schedule(new Node(node, node.from, mid, node.level + 1));
+                schedule(new Node(node, mid, node.to, node.level + 1));
+            }
+        }
+
+        private int[] bufferOf(int level) {
+            return (levels - level) % 2 == 0 ? data : buffer;
+        }
+
+        private void complete(Node node) throws IOException {
+            if (node.parent == null) {
+                result.complete(resultHolder.hold(bufferOf(0)));
+            } else if (node.parent.pendingChildren.decrementAndGet() == 0) {
+                // both buffers are allocated already, so in-chunk merges need no heap
+                mergeScheduler.submit(new MergeRange(node.parent), (node.parent.to - node.parent.from) * 4L, 0);
+            }
+        }
+
+        @Override
+        public IntermediateResult get() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        @Override
+        public void fail(Throwable failure) {
+            result.completeExceptionally(failure);
+        }
+
+        private class Node {
+            private final Node parent;
+            private final int from;
+            private final int to;
+            private final int level;
+            private final AtomicInteger pendingChildren = new AtomicInteger(2);
+
+            public Node(Node parent, int from, int to, int level) {
+                this.parent = parent;
+                this.from = from;
+                this.to = to;
+                this.level = level;
+            }
+        }
+
+        private class SortRange implements Runnable {
+
+            private final Node node;
+
+            public SortRange(Node node) {
+                this.node = node;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    if (!inPlace) copy(chunk.slice(node.from, node.to), data, node.from);
+                    kernels.sort(data, buffer, node.from, node.to);
+                    complete(node);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private class MergeRange implements Runnable {
+
+            private final Node node;
+
+            public MergeRange(Node node) {
+                this.node = node;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    int mid = node.from + (node.to - node.from) / 2;
+                    kernels.merge(bufferOf(node.level + 1), node.from, mid, node.to, bufferOf(node.level));
+                    complete(node);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    private class MergingFutureResult implements PartsFutureResult {
         private int parts;
         private final SortedMap<Integer, IntermediateResult> completionQueue;
         private final IntermediateResultHolder intermediateResultHolder;
         private final IntermediateResultHolder mergeResultHolder;
+        private Throwable failure;
 
+        /**
+         * @param mergeResultHolder holder for the final merge, or null to leave the final merge lazy
+         */
         public MergingFutureResult(int parts, IntermediateResultHolder intermediateResultHolder, IntermediateResultHolder mergeResultHolder) {
             this.parts = parts;
             this.intermediateResultHolder = intermediateResultHolder;
@@ -268,13 +678,13 @@ public class Solver {
         }
 
         @Override
-        public void addPart(IntermediateResult part) {
+        public void addPart(IntermediateResult part) throws IOException {
             synchronized (completionQueue) {
                 merge(0, part);
             }
         }
 
-        public void addMergeResult(Integer level, IntermediateResult result) {
+        public void addMergeResult(Integer level, IntermediateResult result) throws IOException {
             synchronized (completionQueue) {
                 parts--;
                 merge(level, result);
@@ -282,14 +692,14 @@ public class Solver {
             }
         }
 
-        private void merge(Integer level, IntermediateResult part) {
+        private void merge(Integer level, IntermediateResult part) throws IOException {
             if (completionQueue.isEmpty()) {
                 completionQueue.put(level, part);
             } else if (parts > 2) {
                 IntermediateResult sameLevelResult = completionQueue.remove(level);
                 if (sameLevelResult != null) {
                     Tuple pair = new Tuple(sameLevelResult, part);
-                    executor.submit(new Merge(level + 1, pair, intermediateResultHolder, this));
+                    submitMerge(level + 1, pair, intermediateResultHolder);
                 } else {
                     completionQueue.put(level, part);
                 }
@@ -300,23 +710,49 @@ public class Solver {
                         int key2 = completionQueue.firstKey();
                         IntermediateResult r2 = completionQueue.remove(key2);
                         Tuple pair = new Tuple(r1, r2);
-                        executor.submit(new Merge(Math.max(key1, key2) + 1, pair, intermediateResultHolder, this));
+                        submitMerge(Math.max(key1, key2) + 1, pair, intermediateResultHolder);
                     }
                 }
             } else if (parts == 2) {
                 IntermediateResult result = completionQueue.remove(completionQueue.firstKey());
                 Tuple pair = new Tuple(result, part);
-                executor.submit(new Merge(level + 1, pair, mergeResultHolder, this));
+                if (mergeResultHolder == null) {
+                    parts--;
+                    completionQueue.put(level + 1, new MergedResult(pair));
+                    completionQueue.notifyAll();
+                } else {
+                    submitMerge(level + 1, pair, mergeResultHolder);
+                }
             }
         }
 
+        private void submitMerge(int level, Tuple pair, IntermediateResultHolder resultHolder) throws IOException {
+            long size = pair._1.size() + pair._2.size();
+            long memory = 0;
+            if (resultHolder instanceof IntermediateResultHolder.InMemory) {
+                memory = size;
+            } else if (resultHolder instanceof HybridResultHolder) {
+                memory = ((HybridResultHolder) resultHolder).memoryFor(size);
+            }
+            mergeScheduler.submit(new Merge(level, pair, resultHolder, this), size, memory);
+        }
+
         @Override
-        public IntermediateResult get() throws InterruptedException {
+        public IntermediateResult get() throws InterruptedException, ExecutionException {
             synchronized (completionQueue) {
-                while (parts != 1) completionQueue.wait();
+                while (parts != 1 && failure == null) completionQueue.wait();
+                if (failure != null) throw new ExecutionException(failure);
                 return completionQueue.remove(completionQueue.firstKey());
             }
         }
+
+        @Override
+        public void fail(Throwable failure) {
+            synchronized (completionQueue) {
+                if (this.failure == null) this.failure = failure;
+                completionQueue.notifyAll();
+            }
+        }
     }
 
 }
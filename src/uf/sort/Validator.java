@@ -1,15 +1,20 @@
 package uf.sort;
 
-import uf.sort.io.IntermediateResultHolder;
+import uf.sort.kernel.Kernels;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-
-import static uf.sort.io.IntermediateResultHolder.IntermediateResult;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 public class Validator {
 
+    private static final int HISTOGRAM_SHIFT = 16;
+
+    private final Kernels kernels = Kernels.instance();
 
     public void validate(final File in, File out) throws IOException {
 
@@ -17,26 +22,57 @@ public class Validator {
 
         long freeMemory = Runtime.getRuntime().freeMemory();
         if (freeMemory > Integer.MAX_VALUE) freeMemory = Integer.MAX_VALUE;
-        int readBuffer = (int)(freeMemory - freeMemory % 4);
+        int readBuffer = (int)(freeMemory / 2 - freeMemory / 2 % 4);
         System.err.println("Read buffer: " + readBuffer + " bytes");
+        System.err.println("Kernels: " + kernels);
 
         if (in.length() != out.length()) throw new RuntimeException("invalid output size");
 
-        IntermediateResult result = new IntermediateResultHolder.InFile(out, readBuffer).wrap();
+        int[] block = new int[readBuffer / 4];
+        int[] inMinMax = new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE};
+        int[] outMinMax = new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE};
+        long[] inHistogram = new long[1 << (32 - HISTOGRAM_SHIFT)];
+        long[] outHistogram = new long[1 << (32 - HISTOGRAM_SHIFT)];
 
+        RandomAccessFile input = new RandomAccessFile(in, "r");
         try {
+            FileChannel channel = input.getChannel();
+            for (long position = 0; position < in.length(); position += readBuffer) {
+                int length = read(channel, position, (int)Math.min(readBuffer, in.length() - position), block);
+                kernels.minMax(block, 0, length, inMinMax);
+                kernels.histogram(block, 0, length, HISTOGRAM_SHIFT, inHistogram);
+            }
+        } finally {
+            input.close();
+        }
+
+        RandomAccessFile output = new RandomAccessFile(out, "r");
+        try {
+            FileChannel channel = output.getChannel();
             int prev = Integer.MIN_VALUE;
-            Iterator<Integer> data = result.iterate();
-            while (data.hasNext()) {
-                int value = data.next();
-                if (value < prev) throw new RuntimeException("invalid order");
-                prev = value;
+            for (long position = 0; position < out.length(); position += readBuffer) {
+                int length = read(channel, position, (int)Math.min(readBuffer, out.length() - position), block);
+                if (length == 0) continue;
+                if (block[0] < prev || !kernels.isSorted(block, 0, length)) throw new RuntimeException("invalid order");
+                prev = block[length - 1];
+                kernels.minMax(block, 0, length, outMinMax);
+                kernels.histogram(block, 0, length, HISTOGRAM_SHIFT, outHistogram);
             }
         } finally {
-            result.close();
+            output.close();
         }
 
+        if (!Arrays.equals(inMinMax, outMinMax) || !Arrays.equals(inHistogram, outHistogram))
+            throw new RuntimeException("output values differ from input");
 
         System.err.println("done.");
     }
+
+    private int read(FileChannel channel, long position, int size, int[] block) throws IOException {
+        IntBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        int length = buffer.remaining();
+        buffer.get(block, 0, length);
+        return length;
+    }
 }
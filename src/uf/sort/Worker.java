@@ -0,0 +1,156 @@
+package uf.sort;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sort worker process: accepts partitions from a {@link Coordinator}, sorts them with {@link Solver}
+ * and streams them back. Heartbeats are sent while sorting so the coordinator can detect dead workers.
+ */
+public class Worker {
+
+    static final int DONE = 0;
+    static final int HEARTBEAT = 1;
+    static final int FAILED = 2;
+
+    static final int HEARTBEAT_INTERVAL = 1000;
+    static final int TRANSFER_BUFFER = 1024 * 1024;
+
+    private final int threadsNumber;
+    private final File workDir;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public Worker(int threadsNumber, File workDir) {
+        this.threadsNumber = threadsNumber;
+        this.workDir = workDir;
+    }
+
+    public void serve(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port);
+        System.err.println("Worker listening on port " + serverSocket.getLocalPort());
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                try {
+                    handle(socket);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), TRANSFER_BUFFER));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), TRANSFER_BUFFER));
+
+        int partition = input.readInt();
+        long size = input.readLong();
+        System.err.println("Partition " + partition + ": " + size + " bytes");
+
+        final File in = File.createTempFile("part", null, workDir);
+        in.deleteOnExit();
+        final File out = File.createTempFile("part", null, workDir);
+        out.deleteOnExit();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CountDownLatch finished = new CountDownLatch(1);
+        Future<Void> sort = null;
+        try {
+            OutputStream partitionOutput = new BufferedOutputStream(new FileOutputStream(in), TRANSFER_BUFFER);
+            try {
+                copy(input, partitionOutput, size);
+            } finally {
+                partitionOutput.close();
+            }
+
+            out.delete();
+            sort = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    if (!claimed.compareAndSet(false, true)) return null;
+                    try {
+                        Solver solver = new Solver(threadsNumber);
+                        try {
+                            solver.solve(in, out);
+                        } finally {
+                            solver.close();
+                        }
+                        return null;
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+
+            while (true) {
+                try {
+                    sort.get(HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    output.writeInt(HEARTBEAT);
+                    output.flush();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    output.writeInt(FAILED);
+                    output.writeUTF(String.valueOf(e.getCause()));
+                    output.flush();
+                    return;
+                }
+            }
+
+            output.writeInt(DONE);
+            output.writeLong(out.length());
+            InputStream result = new BufferedInputStream(new FileInputStream(out), TRANSFER_BUFFER);
+            try {
+                copy(result, output, out.length());
+            } finally {
+                result.close();
+            }
+            output.flush();
+        } finally {
+            // the coordinator may be gone while the sort is still running, stop it before its files are deleted
+            if (sort != null && !sort.isDone()) {
+                sort.cancel(true);
+                if (!claimed.compareAndSet(false, true)) awaitUninterruptibly(finished);
+            }
+            in.delete();
+            out.delete();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    static void copy(InputStream from, OutputStream to, long size) throws IOException {
+        byte[] buffer = new byte[TRANSFER_BUFFER];
+        while (size > 0) {
+            int read = from.read(buffer, 0, (int)Math.min(buffer.length, size));
+            if (read < 0) throw new EOFException("unexpected end of stream");
+            to.write(buffer, 0, read);
+            size -= read;
+        }
+    }
+}
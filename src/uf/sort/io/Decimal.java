@@ -0,0 +1,133 @@
+package uf.sort.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocation-free parsing and formatting of newline-delimited decimal integers.
+ */
+final class Decimal {
+
+    /**
+     * Longest formatted value with its newline, {@code "-2147483648\n"}.
+     */
+    static final int MAX_LENGTH = 12;
+
+    private static final byte[] MIN_VALUE = "-2147483648".getBytes();
+
+    private Decimal() {
+    }
+
+    /**
+     * @return number of lines in {@code text[from, to)}, counting a last line without newline
+     */
+    static int count(ByteBuffer text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (text.get(i) == '\n') count++;
+        }
+        if (to > from && text.get(to - 1) != '\n') count++;
+        return count;
+    }
+
+    /**
+     * Parses lines of {@code text[from, to)} into {@code data} from {@code offset}. Malformed lines are
+     * recorded in {@code errors} with their byte offsets, {@code base} being the file offset of the text.
+     */
+    static void parse(ByteBuffer text, int from, int to, long base, int[] data, int offset, Errors errors) {
+        int i = from;
+        while (i < to) {
+            int lineStart = i;
+            boolean negative = false;
+            boolean valid = true;
+            int digits = 0;
+            long value = 0;
+
+            byte c = text.get(i);
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                i++;
+            }
+            while (i < to && (c = text.get(i)) != '\n') {
+                if (c >= '0' && c <= '9') {
+                    if (value <= Integer.MAX_VALUE) value = value * 10 + (c - '0');
+                    digits++;
+                } else if (c != '\r' || i + 1 < to && text.get(i + 1) != '\n') {
+                    valid = false;
+                }
+                i++;
+            }
+            i++;
+
+            if (negative) value = -value;
+            if (digits == 0 || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) valid = false;
+            if (!valid) {
+                errors.add(base + lineStart);
+                value = 0;
+            }
+            data[offset++] = (int) value;
+        }
+    }
+
+    /**
+     * Formats {@code data[from, to)} into {@code text}, one value per line.
+     *
+     * @return number of bytes written
+     */
+    static int format(int[] data, int from, int to, byte[] text) {
+        int position = 0;
+        for (int i = from; i < to; i++) {
+            int value = data[i];
+            if (value == Integer.MIN_VALUE) {
+                System.arraycopy(MIN_VALUE, 0, text, position, MIN_VALUE.length);
+                position += MIN_VALUE.length;
+            } else {
+                if (value < 0) {
+                    text[position++] = '-';
+                    value = -value;
+                }
+                int end = position + digits(value);
+                position = end;
+                do {
+                    text[--end] = (byte) ('0' + value % 10);
+                    value /= 10;
+                } while (value != 0);
+            }
+            text[position++] = '\n';
+        }
+        return position;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Collects byte offsets of malformed lines, keeping the first few for reporting.
+     */
+    static class Errors {
+
+        private static final int REPORTED = 10;
+
+        private final long[] offsets = new long[REPORTED];
+        private int count = 0;
+
+        synchronized void add(long offset) {
+            if (count < REPORTED) offsets[count] = offset;
+            count++;
+        }
+
+        synchronized void check() {
+            if (count == 0) return;
+            long[] reported = Arrays.copyOf(offsets, Math.min(count, REPORTED));
+            Arrays.sort(reported);
+            throw new IllegalArgumentException(count + " malformed lines, at byte offsets "
+                    + Arrays.toString(reported) + (count > REPORTED ? "..." : ""));
+        }
+    }
+}
@@ -3,21 +3,39 @@ package uf.sort.io;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Iterator;
 
+import static uf.sort.io.IntermediateResultHolder.Bounds;
 import static uf.sort.io.IntermediateResultHolder.IntermediateResult;
 
 public class FileBackedResult implements IntermediateResult {
 
     private final RandomAccessFile file;
     private final int bufferSize;
+    private final long from;
+    private final long to;
+    private final boolean slice;
+    private Bounds bounds;
 
     public FileBackedResult(RandomAccessFile file, int bufferSize) throws FileNotFoundException {
+        this(file, bufferSize, null);
+    }
+
+    public FileBackedResult(RandomAccessFile file, int bufferSize, Bounds bounds) throws FileNotFoundException {
+        this(file, bufferSize, 0, -1, false, bounds);
+    }
+
+    private FileBackedResult(RandomAccessFile file, int bufferSize, long from, long to, boolean slice, Bounds bounds) {
         this.file = file;
         this.bufferSize = bufferSize;
+        this.from = from;
+        this.to = to;
+        this.slice = slice;
+        this.bounds = bounds;
     }
 
     @Override
@@ -25,9 +43,35 @@ public class FileBackedResult implements IntermediateResult {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * @return view of the result which shares its file and leaves it open when closed
+     */
+    @Override
+    public IntermediateResult slice(long from, long to) {
+        return new FileBackedResult(file, bufferSize, this.from + from * 4, this.from + to * 4, true, null);
+    }
+
     @Override
     public long size() throws IOException {
-        return file.length();
+        return end() - from;
+    }
+
+    @Override
+    public synchronized Bounds bounds() throws IOException {
+        if (bounds == null) {
+            bounds = Bounds.of(iterate());
+        }
+        return bounds;
+    }
+
+    @Override
+    public int get(long index) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        long position = from + index * 4;
+        while (value.hasRemaining()) {
+            if (file.getChannel().read(value, position + value.position()) < 0) throw new IOException("unexpected end of file");
+        }
+        return value.getInt(0);
     }
 
     @Override
@@ -42,13 +86,25 @@ public class FileBackedResult implements IntermediateResult {
 
     @Override
     public void close() throws IOException {
-        file.close();
+        if (!slice) file.close();
+    }
+
+    FileChannel channel() {
+        return file.getChannel();
+    }
+
+    long position() {
+        return from;
+    }
+
+    private long end() throws IOException {
+        return to < 0 ? file.length() : to;
     }
 
     public int chunksNumber(int chunkSize) throws IOException {
 
-        int chunksNumber = (int) (file.length() / chunkSize);
-        if ((long) chunksNumber * chunkSize < file.length()) chunksNumber += 1;
+        int chunksNumber = (int) (size() / chunkSize);
+        if ((long) chunksNumber * chunkSize < size()) chunksNumber += 1;
         return chunksNumber;
     }
 
@@ -56,11 +112,11 @@ public class FileBackedResult implements IntermediateResult {
 
         return new FileChunksIterator(chunkSize);
     }
-    
+
     class FileChunksIterator implements Iterator<IntermediateResult> {
 
         private final int chunkSize;
-        private long position = 0;
+        private long position = from;
 
         public FileChunksIterator(int chunkSize) {
             this.chunkSize = chunkSize;
@@ -69,7 +125,7 @@ public class FileBackedResult implements IntermediateResult {
         @Override
         public boolean hasNext() {
             try {
-                return position < file.length();
+                return position < end();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -79,10 +135,10 @@ public class FileBackedResult implements IntermediateResult {
         public IntermediateResult next() {
             try {
                 int currentChunkSize;
-                if (file.length() - position > chunkSize) {
+                if (end() - position > chunkSize) {
                     currentChunkSize = chunkSize;
                 } else {
-                    currentChunkSize = (int)(file.length() - position);
+                    currentChunkSize = (int)(end() - position);
                 }
                 IntBuffer buffer = file.getChannel()
                         .map(FileChannel.MapMode.READ_ONLY, position, currentChunkSize)
@@ -0,0 +1,14 @@
+package uf.sort.io;
+
+public enum Format {
+
+    /**
+     * Big-endian 32-bit integers.
+     */
+    BINARY,
+
+    /**
+     * Newline-delimited decimal integers.
+     */
+    TEXT
+}
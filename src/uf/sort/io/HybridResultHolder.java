@@ -0,0 +1,304 @@
+package uf.sort.io;
+
+import java.io.IOException;
+import java.util.*;
+
+import static uf.sort.io.IntermediateResultHolder.Bounds;
+import static uf.sort.io.IntermediateResultHolder.IntermediateResult;
+import static uf.sort.io.IntermediateResultHolder.Tuple;
+
+/**
+ * Holds results in memory while their total size fits the budget. When a new result doesn't fit,
+ * the largest results which haven't been read yet are spilled to temporary files; if that doesn't free
+ * enough, the new result is written to a temporary file directly.
+ */
+public class HybridResultHolder implements IntermediateResultHolder {
+
+    private final long budget;
+    private final IntermediateResultHolder memory = new IntermediateResultHolder.InMemory();
+    private final IntermediateResultHolder disk;
+
+    private final List<HybridResult> resident = new ArrayList<HybridResult>();
+    private long used = 0;
+
+    private int spilledResults = 0;
+    private long spilledBytes = 0;
+    private int diskResults = 0;
+
+    public HybridResultHolder(long budget, int bufferSize) {
+        this.budget = budget;
+        this.disk = new IntermediateResultHolder.InTmpFile(bufferSize);
+    }
+
+    @Override
+    public IntermediateResult hold(int[] data) throws IOException {
+        long size = data.length * 4L;
+        if (!reserve(size)) return onDisk(disk.hold(data));
+        try {
+            return resident(memory.hold(data), size);
+        } catch (RuntimeException e) {
+            unreserve(size);
+            throw e;
+        }
+    }
+
+    @Override
+    public IntermediateResult hold(Iterator<Integer> data, long size) throws IOException {
+        if (!reserve(size)) return onDisk(disk.hold(data, size));
+        try {
+            return resident(memory.hold(data, size), size);
+        } catch (IOException e) {
+            unreserve(size);
+            throw e;
+        } catch (RuntimeException e) {
+            unreserve(size);
+            throw e;
+        }
+    }
+
+    @Override
+    public IntermediateResult concat(List<IntermediateResult> parts, Bounds bounds) throws IOException {
+        long size = 0;
+        for (IntermediateResult part : parts) {
+            size += part.size();
+        }
+        if (!reserve(size)) return onDisk(disk.concat(parts, bounds));
+        try {
+            return resident(memory.concat(parts, bounds), size);
+        } catch (IOException e) {
+            unreserve(size);
+            throw e;
+        } catch (RuntimeException e) {
+            unreserve(size);
+            throw e;
+        }
+    }
+
+    /**
+     * @return heap bytes a result of {@code size} bytes takes: its size when it can be held in memory,
+     * if need be by spilling other results, and 0 when it is written to disk directly
+     */
+    public long memoryFor(long size) {
+        return size <= budget ? size : 0;
+    }
+
+    public synchronized int spilledResults() {
+        return spilledResults;
+    }
+
+    public synchronized long spilledBytes() {
+        return spilledBytes;
+    }
+
+    public synchronized int diskResults() {
+        return diskResults;
+    }
+
+    private synchronized IntermediateResult onDisk(IntermediateResult result) {
+        diskResults++;
+        return result;
+    }
+
+    private synchronized IntermediateResult resident(IntermediateResult result, long size) {
+        HybridResult hybridResult = new HybridResult(result, size);
+        resident.add(hybridResult);
+        return hybridResult;
+    }
+
+    private boolean reserve(long size) throws IOException {
+        List<HybridResult> victims = new ArrayList<HybridResult>();
+        synchronized (this) {
+            if (used + size <= budget) {
+                used += size;
+                return true;
+            }
+            if (size > budget) return false;
+
+            List<HybridResult> candidates = new ArrayList<HybridResult>();
+            for (HybridResult result : resident) {
+                if (!result.pinned && !result.spilling) candidates.add(result);
+            }
+            Collections.sort(candidates, new Comparator<HybridResult>() {
+                @Override
+                public int compare(HybridResult r1, HybridResult r2) {
+                    return Long.compare(r2.size, r1.size);
+                }
+            });
+            long needed = used + size - budget;
+            for (HybridResult candidate : candidates) {
+                if (needed <= 0) break;
+                victims.add(candidate);
+                needed -= candidate.size;
+            }
+            if (needed > 0) return false;
+            for (HybridResult victim : victims) {
+                victim.spilling = true;
+            }
+        }
+
+        IOException failure = null;
+        for (HybridResult victim : victims) {
+            if (failure == null) {
+                try {
+                    victim.spill();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            } else {
+                victim.cancelSpill();
+            }
+        }
+        if (failure != null) throw failure;
+
+        synchronized (this) {
+            if (used + size <= budget) {
+                used += size;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private synchronized void unreserve(long size) {
+        used -= size;
+    }
+
+    private synchronized void release(HybridResult result) {
+        if (resident.remove(result)) used -= result.size;
+    }
+
+    /**
+     * Result which stays in memory until it is spilled. Results are pinned in memory once they are read.
+     */
+    private class HybridResult implements IntermediateResult {
+
+        private final long size;
+        private IntermediateResult delegate;
+        private boolean pinned = false;
+        private boolean spilling = false;
+        private boolean closed = false;
+
+        public HybridResult(IntermediateResult delegate, long size) {
+            this.delegate = delegate;
+            this.size = size;
+        }
+
+        /**
+         * Pins the result. A result being spilled is read from its file once the spill completes: reading
+         * the in-memory copy would keep it on the heap after its bytes were released from the budget.
+         */
+        private IntermediateResult use() {
+            synchronized (HybridResultHolder.this) {
+                boolean interrupted = false;
+                while (spilling) {
+                    try {
+                        HybridResultHolder.this.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+                if (closed) throw new IllegalStateException("result closed");
+                pinned = true;
+                return delegate;
+            }
+        }
+
+        private void spill() throws IOException {
+            IntermediateResult inMemory;
+            synchronized (HybridResultHolder.this) {
+                inMemory = delegate;
+            }
+            IntermediateResult spilled;
+            try {
+                spilled = disk.concat(Collections.singletonList(inMemory), inMemory.bounds());
+            } catch (IOException e) {
+                cancelSpill();
+                throw e;
+            }
+            boolean discard;
+            synchronized (HybridResultHolder.this) {
+                spilling = false;
+                HybridResultHolder.this.notifyAll();
+                discard = closed;
+                if (!closed) {
+                    delegate = spilled;
+                    spilledResults++;
+                    spilledBytes += size;
+                }
+                release(this);
+            }
+            if (discard) {
+                spilled.close();
+                inMemory.close();
+            }
+        }
+
+        /**
+         * Keeps the result in memory after a failed or skipped spill.
+         */
+        private void cancelSpill() throws IOException {
+            IntermediateResult current;
+            synchronized (HybridResultHolder.this) {
+                spilling = false;
+                HybridResultHolder.this.notifyAll();
+                if (!closed) return;
+                release(this);
+                current = delegate;
+            }
+            current.close();
+        }
+
+        @Override
+        public Tuple split() {
+            return use().split();
+        }
+
+        @Override
+        public IntermediateResult slice(long from, long to) {
+            return use().slice(from, to);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Bounds bounds() throws IOException {
+            IntermediateResult current;
+            synchronized (HybridResultHolder.this) {
+                current = delegate;
+            }
+            return current.bounds();
+        }
+
+        @Override
+        public int get(long index) throws IOException {
+            return use().get(index);
+        }
+
+        @Override
+        public int[] data() {
+            return use().data();
+        }
+
+        @Override
+        public Iterator<Integer> iterate() throws IOException {
+            return use().iterate();
+        }
+
+        @Override
+        public void close() throws IOException {
+            IntermediateResult current;
+            synchronized (HybridResultHolder.this) {
+                if (closed) return;
+                closed = true;
+                if (spilling) return;
+                release(this);
+                current = delegate;
+            }
+            current.close();
+        }
+    }
+}
@@ -32,15 +32,25 @@ public class IntBufferBackedResult implements IntermediateResultHolder.Intermedi
     }
 
     private volatile IntBuffer buf;
+    private IntermediateResultHolder.Bounds bounds;
 
     public IntBufferBackedResult(IntBuffer buf) {
-        this.buf = buf;
+        this(buf, null);
     }
 
     public IntBufferBackedResult(int[] data) {
         this(IntBuffer.wrap(data));
     }
 
+    public IntBufferBackedResult(IntBuffer buf, IntermediateResultHolder.Bounds bounds) {
+        this.buf = buf;
+        this.bounds = bounds;
+    }
+
+    public IntBufferBackedResult(int[] data, IntermediateResultHolder.Bounds bounds) {
+        this(IntBuffer.wrap(data), bounds);
+    }
+
     @Override
     public IntermediateResultHolder.Tuple split() {
 
@@ -58,9 +68,30 @@ public class IntBufferBackedResult implements IntermediateResultHolder.Intermedi
         );
     }
 
+    @Override
+    public IntermediateResultHolder.IntermediateResult slice(long from, long to) {
+        IntBuffer slice = this.buf.duplicate();
+        slice.position((int)from);
+        slice.limit((int)to);
+        return new IntBufferBackedResult(slice.slice());
+    }
+
     @Override
     public long size() {
-        return buf.limit() * 4;
+        return buf.limit() * 4L;
+    }
+
+    @Override
+    public synchronized IntermediateResultHolder.Bounds bounds() {
+        if (bounds == null) {
+            bounds = IntermediateResultHolder.Bounds.of(iterate());
+        }
+        return bounds;
+    }
+
+    @Override
+    public int get(long index) {
+        return buf.get((int)index);
     }
 
     @Override
@@ -76,6 +107,28 @@ public class IntBufferBackedResult implements IntermediateResultHolder.Intermedi
         return new IntBufferBackedIterator(buf.duplicate());
     }
 
+    /**
+     * @return array backing the whole result, without copying, or null when the result is a view of
+     * a mapped buffer or of a part of an array
+     */
+    public int[] array() {
+        IntBuffer buffer = buffer();
+        if (!buffer.hasArray() || buffer.arrayOffset() != 0 || buffer.limit() != buffer.array().length) return null;
+        return buffer.array();
+    }
+
+    /**
+     * Copies values into {@code target} from {@code offset}.
+     */
+    public void copyTo(int[] target, int offset) {
+        buffer().get(target, offset, buf.limit());
+    }
+
+    IntBuffer buffer() {
+        if (buf == null) throw new IllegalStateException("result closed");
+        return buf.duplicate();
+    }
+
     @Override
     public void close() {
         buf = null;
@@ -9,6 +9,7 @@ import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Iterator;
+import java.util.List;
 
 public interface IntermediateResultHolder  {
 
@@ -22,12 +23,61 @@ public interface IntermediateResultHolder  {
         }
     }
 
+    /**
+     * Minimum and maximum values of a result. Empty results have {@code min > max}.
+     */
+    class Bounds {
+        public static final Bounds EMPTY = new Bounds(Integer.MAX_VALUE, Integer.MIN_VALUE);
+
+        public final int min;
+        public final int max;
+
+        public Bounds(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public Bounds union(Bounds other) {
+            return new Bounds(Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        public static Bounds of(int[] data) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int value : data) {
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+            return new Bounds(min, max);
+        }
+
+        public static Bounds of(Iterator<Integer> data) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            while (data.hasNext()) {
+                int value = data.next();
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+            return new Bounds(min, max);
+        }
+    }
+
     interface IntermediateResult {
 
         Tuple split();
 
+        /**
+         * @return view of values with indexes from {@code from} inclusive to {@code to} exclusive
+         */
+        IntermediateResult slice(long from, long to);
+
         long size() throws IOException;
 
+        Bounds bounds() throws IOException;
+
+        int get(long index) throws IOException;
+
         int[] data();
 
         Iterator<Integer> iterate() throws IOException;
@@ -39,21 +89,60 @@ public interface IntermediateResultHolder  {
 
     IntermediateResult hold(Iterator<Integer> data, long size) throws IOException;
 
+    /**
+     * Holds parts one after another. File and buffer backed parts are copied in bulk,
+     * other parts are iterated.
+     */
+    IntermediateResult concat(List<IntermediateResult> parts, Bounds bounds) throws IOException;
+
     class InMemory implements IntermediateResultHolder {
 
         @Override
         public IntermediateResult hold(int[] data) throws IOException {
-            return new IntBufferBackedResult(data);
+            return new IntBufferBackedResult(data, Bounds.of(data));
         }
 
         @Override
         public IntermediateResult hold(Iterator<Integer> iterator, long size) throws IOException {
             if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("");
             int[] data = new int[(int)size / 4];
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
             for (int i = 0; i < size / 4; i++) {
-                data[i] = iterator.next();
+                int value = iterator.next();
+                if (value < min) min = value;
+                if (value > max) max = value;
+                data[i] = value;
             }
-            return new IntBufferBackedResult(data);
+            return new IntBufferBackedResult(data, new Bounds(min, max));
+        }
+
+        @Override
+        public IntermediateResult concat(List<IntermediateResult> parts, Bounds bounds) throws IOException {
+            long size = 0;
+            for (IntermediateResult part : parts) {
+                size += part.size();
+            }
+            if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("");
+            int[] data = new int[(int)size / 4];
+            int position = 0;
+            for (IntermediateResult part : parts) {
+                int length = (int)(part.size() / 4);
+                if (part instanceof IntBufferBackedResult) {
+                    ((IntBufferBackedResult) part).buffer().get(data, position, length);
+                } else if (part instanceof FileBackedResult) {
+                    FileBackedResult filePart = (FileBackedResult) part;
+                    filePart.channel().map(FileChannel.MapMode.READ_ONLY, filePart.position(), part.size())
+                            .order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(data, position, length);
+                } else {
+                    Iterator<Integer> iterator = part.iterate();
+                    for (int i = position; i < position + length; i++) {
+                        data[i] = iterator.next();
+                    }
+                }
+                position += length;
+            }
+            return new IntBufferBackedResult(data, bounds);
         }
     }
 
@@ -76,41 +165,86 @@ public interface IntermediateResultHolder  {
             } finally {
                 file.close();
             }
-            return new FileBackedResult(file, bufferSize);
+            return new FileBackedResult(new RandomAccessFile(this.file, "r"), bufferSize, Bounds.of(data));
         }
 
         @Override
         public IntermediateResult hold(Iterator<Integer> data, long size) throws IOException {
 
             RandomAccessFile file = new RandomAccessFile(this.file, "rw");
+            Bounds bounds;
             try {
-                FileChannel channel = file.getChannel();
-
-                IntBuffer buffer = IntBuffer.allocate(bufferSize / 4);
-                while (data.hasNext()) {
-                    buffer.put(data.next());
-                    if (buffer.remaining() == 0) {
-                        buffer.flip();
-                        channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), bufferSize)
-                                .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(buffer);
-                        channel.position(channel.position() + bufferSize);
-                        buffer = IntBuffer.allocate(bufferSize / 4);
-                    }
-                }
-                buffer.flip();
-                channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), buffer.limit() * 4)
-                        .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(buffer);
+                bounds = write(file.getChannel(), data, bufferSize);
             } finally {
                 file.close();
             }
 
-            return new FileBackedResult(new RandomAccessFile(this.file, "r"), bufferSize);
+            return new FileBackedResult(new RandomAccessFile(this.file, "r"), bufferSize, bounds);
+        }
+
+        @Override
+        public IntermediateResult concat(List<IntermediateResult> parts, Bounds bounds) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(this.file, "rw");
+            try {
+                write(file.getChannel(), parts, bufferSize);
+            } finally {
+                file.close();
+            }
+            return new FileBackedResult(new RandomAccessFile(this.file, "r"), bufferSize, bounds);
         }
 
         public IntermediateResult wrap() throws FileNotFoundException {
             RandomAccessFile file = new RandomAccessFile(this.file, "rw");
             return new FileBackedResult(file, bufferSize);
         }
+
+        /**
+         * Writes data from the channel position, returning bounds of written values.
+         */
+        static Bounds write(FileChannel channel, Iterator<Integer> data, int bufferSize) throws IOException {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            IntBuffer buffer = IntBuffer.allocate(bufferSize / 4);
+            while (data.hasNext()) {
+                int value = data.next();
+                if (value < min) min = value;
+                if (value > max) max = value;
+                buffer.put(value);
+                if (buffer.remaining() == 0) {
+                    buffer.flip();
+                    channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), bufferSize)
+                            .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(buffer);
+                    channel.position(channel.position() + bufferSize);
+                    buffer = IntBuffer.allocate(bufferSize / 4);
+                }
+            }
+            buffer.flip();
+            channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), buffer.limit() * 4)
+                    .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(buffer);
+            channel.position(channel.position() + buffer.limit() * 4);
+            return new Bounds(min, max);
+        }
+
+        static void write(FileChannel channel, List<IntermediateResult> parts, int bufferSize) throws IOException {
+            for (IntermediateResult part : parts) {
+                if (part instanceof FileBackedResult) {
+                    FileBackedResult filePart = (FileBackedResult) part;
+                    long position = filePart.position();
+                    long count = part.size();
+                    while (count > 0) {
+                        long transferred = filePart.channel().transferTo(position, count, channel);
+                        position += transferred;
+                        count -= transferred;
+                    }
+                } else if (part instanceof IntBufferBackedResult) {
+                    channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), part.size())
+                            .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(((IntBufferBackedResult) part).buffer());
+                    channel.position(channel.position() + part.size());
+                } else {
+                    write(channel, part.iterate(), bufferSize);
+                }
+            }
+        }
     }
 
     class InTmpFile implements IntermediateResultHolder {
@@ -125,8 +259,8 @@ public interface IntermediateResultHolder  {
 
             private final File file;
 
-            public TmpFileBackedResult(File file) throws FileNotFoundException {
-                super(new RandomAccessFile(file, "r"), bufferSize);
+            public TmpFileBackedResult(File file, Bounds bounds) throws FileNotFoundException {
+                super(new RandomAccessFile(file, "r"), bufferSize, bounds);
                 this.file = file;
             }
 
@@ -148,7 +282,7 @@ public interface IntermediateResultHolder  {
             } finally {
                 file.close();
             }
-            return new TmpFileBackedResult(tmpFile);
+            return new TmpFileBackedResult(tmpFile, Bounds.of(data));
         }
 
         @Override
@@ -157,27 +291,27 @@ public interface IntermediateResultHolder  {
             tmpFile.deleteOnExit();
 
             RandomAccessFile file = new RandomAccessFile(tmpFile, "rw");
+            Bounds bounds;
             try {
-                FileChannel channel = file.getChannel();
-
-                IntBuffer buffer = IntBuffer.allocate(bufferSize / 4);
-                while (data.hasNext()) {
-                    buffer.put(data.next());
-                    if (buffer.remaining() == 0) {
-                        buffer.flip();
-                        channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), bufferSize)
-                                .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(buffer);
-                        channel.position(channel.position() + bufferSize);
-                        buffer = IntBuffer.allocate(bufferSize / 4);
-                    }
-                }
-                buffer.flip();
-                channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), buffer.limit() * 4)
-                        .order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(buffer);
+                bounds = InFile.write(file.getChannel(), data, bufferSize);
+            } finally {
+                file.close();
+            }
+            return new TmpFileBackedResult(tmpFile, bounds);
+        }
+
+        @Override
+        public IntermediateResult concat(List<IntermediateResult> parts, Bounds bounds) throws IOException {
+            File tmpFile = File.createTempFile("sort", null, new File(System.getProperty("user.dir")));
+            tmpFile.deleteOnExit();
+
+            RandomAccessFile file = new RandomAccessFile(tmpFile, "rw");
+            try {
+                InFile.write(file.getChannel(), parts, bufferSize);
             } finally {
                 file.close();
             }
-            return new TmpFileBackedResult(tmpFile);
+            return new TmpFileBackedResult(tmpFile, bounds);
         }
     }
 
@@ -0,0 +1,151 @@
+package uf.sort.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static uf.sort.io.IntermediateResultHolder.IntermediateResult;
+
+/**
+ * Splits a file of newline-delimited decimal integers into chunks aligned to line boundaries.
+ * Every chunk is parsed in parallel over line-aligned segments of its mapped text.
+ */
+public class TextFileChunks {
+
+    private final RandomAccessFile file;
+    private final int segments;
+    private final ExecutorService executor;
+    private final List<Long> boundaries;
+
+    public TextFileChunks(File file, int chunkSize, int segments, ExecutorService executor) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.segments = segments;
+        this.executor = executor;
+        this.boundaries = new ArrayList<Long>();
+
+        long length = this.file.length();
+        long position = 0;
+        boundaries.add(position);
+        while (position < length) {
+            position = position + chunkSize >= length ? length : lineEnd(position + chunkSize);
+            boundaries.add(position);
+        }
+    }
+
+    public int chunksNumber() {
+        return boundaries.size() - 1;
+    }
+
+    public Iterator<IntermediateResult> split() {
+        return new Iterator<IntermediateResult>() {
+
+            private int chunk = 0;
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunksNumber();
+            }
+
+            @Override
+            public IntermediateResult next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                long from = boundaries.get(chunk);
+                long to = boundaries.get(chunk + 1);
+                chunk++;
+                try {
+                    return parse(from, to);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * @return position after the first newline at or after {@code position}, or the file length
+     */
+    private long lineEnd(long position) throws IOException {
+        FileChannel channel = file.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) return channel.size();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+    }
+
+    private IntermediateResult parse(final long from, long to) throws IOException, InterruptedException, ExecutionException {
+        final MappedByteBuffer text = file.getChannel().map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int size = (int) (to - from);
+
+        final int[] starts = new int[segments + 1];
+        for (int i = 1; i < segments; i++) {
+            int start = Math.max(starts[i - 1], (int) ((long) size * i / segments));
+            while (start > 0 && start < size && text.get(start - 1) != '\n') start++;
+            starts[i] = start;
+        }
+        starts[segments] = size;
+
+        List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < segments; i++) {
+            final int segment = i;
+            counts.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return Decimal.count(text, starts[segment], starts[segment + 1]);
+                }
+            }));
+        }
+        final int[] offsets = new int[segments + 1];
+        for (int i = 0; i < segments; i++) {
+            offsets[i + 1] = offsets[i] + counts.get(i).get();
+        }
+
+        final int[] data = new int[offsets[segments]];
+        final Decimal.Errors errors = new Decimal.Errors();
+        List<Future<?>> parsed = new ArrayList<Future<?>>();
+        for (int i = 0; i < segments; i++) {
+            final int segment = i;
+            parsed.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Decimal.parse(text, starts[segment], starts[segment + 1], from, data, offsets[segment], errors);
+                }
+            }));
+        }
+        for (Future<?> future : parsed) {
+            future.get();
+        }
+        errors.check();
+
+        return new IntBufferBackedResult(data);
+    }
+}
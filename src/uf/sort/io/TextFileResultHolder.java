@@ -0,0 +1,203 @@
+package uf.sort.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static uf.sort.io.IntermediateResultHolder.Bounds;
+import static uf.sort.io.IntermediateResultHolder.IntermediateResult;
+import static uf.sort.io.IntermediateResultHolder.Tuple;
+
+/**
+ * Writes results into a file as newline-delimited decimal integers. Values are taken in blocks which
+ * are formatted in parallel and written in order, so pulling values from a merge overlaps with formatting.
+ */
+public class TextFileResultHolder implements IntermediateResultHolder {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final File file;
+    private final int threadsNumber;
+
+    public TextFileResultHolder(File file, int threadsNumber) {
+        this.file = file;
+        this.threadsNumber = threadsNumber;
+    }
+
+    @Override
+    public IntermediateResult hold(int[] data) throws IOException {
+        return write(null, data, data.length);
+    }
+
+    @Override
+    public IntermediateResult hold(Iterator<Integer> data, long size) throws IOException {
+        return write(data, null, size / 4);
+    }
+
+    @Override
+    public IntermediateResult concat(List<IntermediateResult> parts, Bounds bounds) throws IOException {
+        long size = 0;
+        final List<Iterator<Integer>> iterators = new ArrayList<Iterator<Integer>>();
+        for (IntermediateResult part : parts) {
+            size += part.size();
+            iterators.add(part.iterate());
+        }
+        Iterator<Integer> data = new Iterator<Integer>() {
+
+            private int part = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (part < iterators.size() && !iterators.get(part).hasNext()) part++;
+                return part < iterators.size();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return iterators.get(part).next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return write(data, null, size / 4);
+    }
+
+    /**
+     * Writes values taken either from {@code iterator} or from {@code array}.
+     */
+    private IntermediateResult write(Iterator<Integer> iterator, int[] array, long count) throws IOException {
+        ExecutorService formatters = Executors.newFixedThreadPool(threadsNumber);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        try {
+            output.setLength(0);
+            FileChannel channel = output.getChannel();
+
+            Block[] blocks = new Block[threadsNumber * 2];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = new Block();
+            }
+
+            int next = 0;
+            for (long position = 0; position < count; position += BLOCK_SIZE) {
+                final Block block = blocks[next];
+                next = (next + 1) % blocks.length;
+                block.write(channel);
+
+                block.length = (int) Math.min(BLOCK_SIZE, count - position);
+                if (array != null) {
+                    System.arraycopy(array, (int) position, block.values, 0, block.length);
+                } else {
+                    for (int i = 0; i < block.length; i++) {
+                        block.values[i] = iterator.next();
+                    }
+                }
+                for (int i = 0; i < block.length; i++) {
+                    if (block.values[i] < min) min = block.values[i];
+                    if (block.values[i] > max) max = block.values[i];
+                }
+                block.formatted = formatters.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return Decimal.format(block.values, 0, block.length, block.text);
+                    }
+                });
+            }
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[(next + i) % blocks.length].write(channel);
+            }
+        } finally {
+            formatters.shutdownNow();
+            output.close();
+        }
+        return new TextFileResult(count, new Bounds(min, max));
+    }
+
+    private static class Block {
+
+        private final int[] values = new int[BLOCK_SIZE];
+        private final byte[] text = new byte[BLOCK_SIZE * Decimal.MAX_LENGTH];
+        private int length;
+        private Future<Integer> formatted;
+
+        private void write(FileChannel channel) throws IOException {
+            if (formatted == null) return;
+            int textLength;
+            try {
+                textLength = formatted.get();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                formatted = null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(text, 0, textLength);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Result written as text; it can't be read back as binary data.
+     */
+    private static class TextFileResult implements IntermediateResult {
+
+        private final long count;
+        private final Bounds bounds;
+
+        public TextFileResult(long count, Bounds bounds) {
+            this.count = count;
+            this.bounds = bounds;
+        }
+
+        @Override
+        public Tuple split() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IntermediateResult slice(long from, long to) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long size() {
+            return count * 4;
+        }
+
+        @Override
+        public Bounds bounds() {
+            return bounds;
+        }
+
+        @Override
+        public int get(long index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int[] data() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Integer> iterate() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package uf.sort.kernel;
+
+/**
+ * Sort, merge and validation inner loops. {@link #instance()} picks the vectorized implementation
+ * when the JDK Vector API is available at runtime and falls back to plain scalar loops otherwise.
+ */
+public abstract class Kernels {
+
+    private static final Kernels INSTANCE = detect();
+
+    public static Kernels instance() {
+        return INSTANCE;
+    }
+
+    private static Kernels detect() {
+        if (Boolean.parseBoolean(System.getProperty("uf.sort.vector", "true"))) {
+            try {
+                Kernels kernels = (Kernels) Class.forName("uf.sort.kernel.VectorKernels").getDeclaredConstructor().newInstance();
+                if (kernels.isSupported()) return kernels;
+            } catch (Exception e) {
+                // vector kernels are not compiled in
+            } catch (LinkageError e) {
+                // jdk.incubator.vector module is not available
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    protected abstract boolean isSupported();
+
+    /**
+     * Sorts {@code data[from, to)} in place. {@code scratch} is a buffer at least as large as {@code data}
+     * whose {@code [from, to)} range may be overwritten, or null.
+     */
+    public abstract void sort(int[] data, int[] scratch, int from, int to);
+
+    /**
+     * Merges sorted ranges {@code source[from, mid)} and {@code source[mid, to)} into {@code target[from, to)}.
+     */
+    public abstract void merge(int[] source, int from, int mid, int to, int[] target);
+
+    public abstract boolean isSorted(int[] data, int from, int to);
+
+    /**
+     * Narrows {@code minMax[0]} and {@code minMax[1]} to the minimum and maximum of {@code data[from, to)}.
+     */
+    public abstract void minMax(int[] data, int from, int to, int[] minMax);
+
+    /**
+     * Counts values of {@code data[from, to)} by their {@code value >>> shift} bucket.
+     */
+    public abstract void histogram(int[] data, int from, int to, int shift, long[] counts);
+}
@@ -0,0 +1,57 @@
+package uf.sort.kernel;
+
+import java.util.Arrays;
+
+public class ScalarKernels extends Kernels {
+
+    @Override
+    protected boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public void sort(int[] data, int[] scratch, int from, int to) {
+        Arrays.sort(data, from, to);
+    }
+
+    @Override
+    public void merge(int[] source, int from, int mid, int to, int[] target) {
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            target[k++] = source[i] <= source[j] ? source[i++] : source[j++];
+        }
+        System.arraycopy(source, i, target, k, mid - i);
+        k += mid - i;
+        System.arraycopy(source, j, target, k, to - j);
+    }
+
+    @Override
+    public boolean isSorted(int[] data, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (data[i - 1] > data[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void minMax(int[] data, int from, int to, int[] minMax) {
+        for (int i = from; i < to; i++) {
+            if (data[i] < minMax[0]) minMax[0] = data[i];
+            if (data[i] > minMax[1]) minMax[1] = data[i];
+        }
+    }
+
+    @Override
+    public void histogram(int[] data, int from, int to, int shift, long[] counts) {
+        for (int i = from; i < to; i++) {
+            counts[data[i] >>> shift]++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}